@@ -0,0 +1,74 @@
+#!/usr/bin/env bash
+# Measures time to first output of the application, started from the plain jar, with the
+# class-data sharing archive and as a native executable, for the interactive menu and for
+# single-shot commands. Variants whose artifact has not been built are skipped.
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+#   ./gradlew jar cdsArchive            builds the jar and build/cds/app.jsa
+#   ./gradlew -Pnative nativeImage      builds build/native/javaconsoleapp
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS="${1:-10}"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+JAR="$(ls build/libs/JavaConsoleApp-*.jar 2>/dev/null | head -n 1 || true)"
+ARCHIVE=build/cds/app.jsa
+NATIVE=build/native/javaconsoleapp
+
+if [[ -z "$JAR" ]]; then
+    echo "No jar in build/libs; run ./gradlew jar first" >&2
+    exit 1
+fi
+
+now() {
+    date +%s%N
+}
+
+# Prints the milliseconds until the command writes its first line and until it exits
+measure() {
+    local input="$1"
+    shift
+    local start first end
+    start=$(now)
+    first=$(printf '%b' "$input" | "$@" 2>/dev/null | { IFS= read -r _ || true; now; cat >/dev/null; })
+    end=$(now)
+    echo "$(( (first - start) / 1000000 )) $(( (end - start) / 1000000 ))"
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+run() {
+    local variant="$1" workload="$2" input="$3"
+    shift 3
+    local firsts=() totals=()
+    for ((i = 0; i < RUNS; i++)); do
+        read -r first total < <(measure "$input" "$@")
+        firsts+=("$first")
+        totals+=("$total")
+    done
+    printf '%-8s %-10s %12s %12s\n' "$variant" "$workload" \
+        "$(printf '%s\n' "${firsts[@]}" | median)" "$(printf '%s\n' "${totals[@]}" | median)"
+}
+
+workloads() {
+    local variant="$1"
+    shift
+    run "$variant" menu '0\n' "$@"
+    run "$variant" encrypt '' "$@" encrypt --shift 3 Hello World
+    run "$variant" eval '' "$@" eval '2 + 3 * (4 - 1)'
+}
+
+printf '%-8s %-10s %12s %12s\n' variant workload "first (ms)" "exit (ms)"
+workloads jar "$JAVA" -jar "$JAR"
+if [[ -f "$ARCHIVE" ]]; then
+    workloads cds "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR"
+else
+    echo "Skipping cds: $ARCHIVE not found (./gradlew cdsArchive)" >&2
+fi
+if [[ -x "$NATIVE" ]]; then
+    workloads native "$NATIVE"
+else
+    echo "Skipping native: $NATIVE not found (./gradlew -Pnative nativeImage)" >&2
+fi
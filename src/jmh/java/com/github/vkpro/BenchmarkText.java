@@ -0,0 +1,35 @@
+package com.github.vkpro;
+
+import java.util.Random;
+
+/**
+ * Deterministic sample text for the benchmarks.
+ */
+enum BenchmarkText {
+    ASCII("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ", " .,\n"),
+    CYRILLIC("абвгдеёжзийклмнопрстуфхцчшщъыьэюяАБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ", " .,\n"),
+    MIXED("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZабвгдеёжзийклмнопрстуфхцчшщъыьэюя", " .,\n"),
+    NON_LETTER("0123456789+-*/=()[]{}<>;:_#@", " .,\n");
+
+    private final String letters;
+    private final String separators;
+
+    BenchmarkText(String letters, String separators) {
+        this.letters = letters;
+        this.separators = separators;
+    }
+
+    /**
+     * Generates text of the given length made of short runs of letters between separators.
+     */
+    String generate(int length) {
+        Random random = new Random(42);
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = random.nextInt(6) == 0
+                ? separators.charAt(random.nextInt(separators.length()))
+                : letters.charAt(random.nextInt(letters.length()));
+        }
+        return new String(text);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.vkpro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CaesarCipher#encrypt(String, int)} across alphabets and input sizes from 1 KB to 100 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CaesarCipherBenchmark {
+
+    @Param({"ASCII", "CYRILLIC", "MIXED", "NON_LETTER"})
+    public BenchmarkText text;
+
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        input = text.generate(size);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return CaesarCipher.encrypt(input, 3);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return CaesarCipher.decrypt(input, 3);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.vkpro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures expression evaluation through the cache, compilation alone, and evaluation of an
+ * already compiled expression, for short, deeply nested and long flat expressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionEvaluatorBenchmark {
+
+    public enum Shape {
+        SHORT,
+        NESTED,
+        LONG_CHAIN
+    }
+
+    @Param({"SHORT", "NESTED", "LONG_CHAIN"})
+    public Shape shape;
+
+    private String expression;
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setUp() {
+        expression = switch (shape) {
+            case SHORT -> "2 + 3 * (4 - 1)";
+            case NESTED -> nested(200);
+            case LONG_CHAIN -> chain(1000);
+        };
+        compiled = ExpressionEvaluator.compile(expression);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return ExpressionEvaluator.evaluate(expression);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return ExpressionEvaluator.compile(expression);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() {
+        return compiled.evaluate();
+    }
+
+    private static String nested(int depth) {
+        StringBuilder expression = new StringBuilder();
+        expression.append("(".repeat(depth)).append('1');
+        for (int i = 0; i < depth; i++) {
+            expression.append(i % 2 == 0 ? " + " : " * ").append(i % 9 + 1).append(')');
+        }
+        return expression.toString();
+    }
+
+    private static String chain(int terms) {
+        String operators = "+-*/";
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 0; i < terms; i++) {
+            expression.append(' ').append(operators.charAt(i % 4)).append(' ').append(i % 9 + 1);
+        }
+        return expression.toString();
+    }
+}
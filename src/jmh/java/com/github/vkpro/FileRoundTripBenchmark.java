@@ -0,0 +1,75 @@
+package com.github.vkpro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encrypting a file end to end through each of the {@link FileHandler} paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FileRoundTripBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int size;
+
+    private Path directory;
+    private Path input;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cipher-benchmark");
+        input = directory.resolve("input.txt");
+        output = directory.resolve("output.txt");
+        Files.writeString(input, BenchmarkText.MIXED.generate(size), StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void readEncryptWrite() throws IOException {
+        String text = FileHandler.readFromFile(input.toString());
+        FileHandler.writeToFile(output.toString(), CaesarCipher.encrypt(text, 3));
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        FileHandler.transformFile(input, output, CaesarCipher.forShift(3));
+    }
+
+    @Benchmark
+    public void mapped() throws IOException {
+        FileHandler.transformFileMapped(input, output, CaesarCipher.forShift(3));
+    }
+
+    @Benchmark
+    public void parallel() throws IOException {
+        FileHandler.transformFileParallel(input, output, CaesarCipher.forShift(3));
+    }
+}
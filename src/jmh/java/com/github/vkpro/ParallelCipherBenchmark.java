@@ -0,0 +1,52 @@
+package com.github.vkpro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link CaesarCipher#encryptParallel(CharSequence, int, ForkJoinPool)} scales with
+ * the pool's parallelism on a 16 MB input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParallelCipherBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private String input;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkText.MIXED.generate(16 * 1024 * 1024);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String encryptParallel() {
+        return CaesarCipher.encryptParallel(input, 3, pool);
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.vkpro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the socket server: every benchmark thread holds its own connection and
+ * sends one request at a time, so the sampled times are round-trip latencies including the
+ * client. Run with {@code -PjmhArgs="ServerBenchmark -t 16"} to vary the number of
+ * concurrent clients.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ServerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+
+        public enum Transport {
+            TCP,
+            UNIX
+        }
+
+        @Param({"TCP", "UNIX"})
+        public Transport transport;
+
+        private Server server;
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            if (transport == Transport.UNIX) {
+                directory = Files.createTempDirectory("server-benchmark");
+                server = Server.start(UnixDomainSocketAddress.of(directory.resolve("server.sock")));
+            } else {
+                server = Server.start(0);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            server.close();
+            if (directory != null) {
+                Files.deleteIfExists(directory);
+            }
+        }
+
+        SocketAddress address() {
+            return server.address();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        private Client client;
+        private String text;
+
+        @Setup(Level.Trial)
+        public void connect(ServerState server) throws IOException {
+            client = Client.connect(server.address());
+            // Requests are single lines
+            text = BenchmarkText.MIXED.generate(64).replace('\n', ' ');
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public String ping(ClientState state) throws IOException {
+        return state.client.request("PING");
+    }
+
+    @Benchmark
+    public String encrypt(ClientState state) throws IOException {
+        return state.client.encrypt(3, state.text);
+    }
+
+    @Benchmark
+    public String evaluate(ClientState state) throws IOException {
+        return state.client.evaluate("2 + 3 * (4 - 1) / 5");
+    }
+}
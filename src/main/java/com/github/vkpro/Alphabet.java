@@ -0,0 +1,87 @@
+package com.github.vkpro;
+
+import java.util.Objects;
+
+/**
+ * An ordered set of letters that the Caesar cipher rotates within.
+ * <p>
+ * Shifting a letter moves it forward by the shift within its own alphabet, wrapping around
+ * at the end. Upper and lower case are separate alphabets. Letters must be characters of
+ * the Basic Multilingual Plane, so every translated character keeps its UTF-16 length.
+ * Alphabets are registered with an {@link AlphabetRegistry}.
+ */
+public final class Alphabet {
+    public static final Alphabet ENGLISH_LOWERCASE = new Alphabet("English lowercase", "abcdefghijklmnopqrstuvwxyz");
+    public static final Alphabet ENGLISH_UPPERCASE = new Alphabet("English uppercase", "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+    public static final Alphabet RUSSIAN_LOWERCASE = new Alphabet("Russian lowercase", "абвгдеёжзийклмнопрстуфхцчшщъыьэюя");
+    public static final Alphabet RUSSIAN_UPPERCASE = new Alphabet("Russian uppercase", "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ");
+
+    private final String name;
+    private final String letters;
+
+    /**
+     * Creates an alphabet from its letters in order.
+     *
+     * @param name    The name used in messages
+     * @param letters The letters of the alphabet in order
+     * @throws IllegalArgumentException If the letters are empty, repeat, or include surrogate characters
+     */
+    public Alphabet(String name, String letters) {
+        this.name = Objects.requireNonNull(name, "name");
+        if (letters == null || letters.isEmpty()) {
+            throw new IllegalArgumentException("Alphabet " + name + " has no letters");
+        }
+        for (int i = 0; i < letters.length(); i++) {
+            char letter = letters.charAt(i);
+            if (Character.isSurrogate(letter)) {
+                throw new IllegalArgumentException("Alphabet " + name + " has a letter outside the Basic Multilingual Plane");
+            }
+            if (letters.indexOf(letter) != i) {
+                throw new IllegalArgumentException("Alphabet " + name + " repeats the letter '" + letter + "'");
+            }
+        }
+        this.letters = letters;
+    }
+
+    /**
+     * Returns the name of the alphabet.
+     *
+     * @return The alphabet name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the letters of the alphabet in order.
+     *
+     * @return The letters
+     */
+    public String letters() {
+        return letters;
+    }
+
+    /**
+     * Returns the number of letters in the alphabet.
+     *
+     * @return The alphabet length
+     */
+    public int size() {
+        return letters.length();
+    }
+
+    /**
+     * Returns the letter at the given position.
+     *
+     * @param index The position of the letter, starting at 0
+     * @return The letter
+     */
+    public char letterAt(int index) {
+        return letters.charAt(index);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,298 @@
+package com.github.vkpro;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable set of alphabets compiled into a single lookup from character to
+ * (alphabet, position).
+ * <p>
+ * Characters below {@link #DENSE_LIMIT}, which covers the Latin, Greek and Cyrillic scripts
+ * among others, are looked up in a dense array. Letters above it are kept in a small
+ * open-addressing hash table. Either way a lookup takes constant time however many
+ * alphabets are registered. The registry also owns the cache of {@link CaesarCipher}
+ * engines built from it.
+ * <p>
+ * The static cipher methods use the {@linkplain #getDefault() default registry}, which
+ * holds the English and Russian alphabets until it is replaced with {@link #setDefault}.
+ */
+public final class AlphabetRegistry {
+    /**
+     * Characters below this limit are looked up in the dense array. All of them have UTF-8
+     * encodings of at most two bytes.
+     */
+    static final int DENSE_LIMIT = 0x800;
+
+    /**
+     * Returned by {@link #locate(char)} for characters that are not letters of any alphabet.
+     */
+    static final int NOT_FOUND = -1;
+
+    /**
+     * Engines are cached for at most this many distinct normalized shifts.
+     */
+    private static final int MAX_CACHED_ENGINES = 4096;
+
+    private static final AlphabetRegistry STANDARD = of(Alphabet.ENGLISH_LOWERCASE, Alphabet.ENGLISH_UPPERCASE,
+        Alphabet.RUSSIAN_LOWERCASE, Alphabet.RUSSIAN_UPPERCASE);
+
+    private static volatile AlphabetRegistry defaultRegistry = STANDARD;
+
+    private final Alphabet[] alphabets;
+    private final int shiftPeriod;
+
+    // Packed (alphabet << 16 | position) for each character below denseLength, or NOT_FOUND
+    private final int[] dense;
+    private final char[] fallbackKeys;
+    private final int[] fallbackValues;
+    private final char fallbackMin;
+
+    // Engines are immutable, so a racy lazy initialization only ever costs a duplicate build
+    private final CaesarCipher[] engines;
+
+    private AlphabetRegistry(Alphabet[] alphabets) {
+        this.alphabets = alphabets;
+
+        int denseLength = 0;
+        int fallbackCount = 0;
+        char min = Character.MAX_VALUE;
+        long period = 1;
+        for (Alphabet alphabet : alphabets) {
+            for (int i = 0; i < alphabet.size(); i++) {
+                char letter = alphabet.letterAt(i);
+                if (letter < DENSE_LIMIT) {
+                    denseLength = Math.max(denseLength, letter + 1);
+                } else {
+                    fallbackCount++;
+                    min = (char) Math.min(min, letter);
+                }
+            }
+            period = lcm(period, alphabet.size());
+            if (period > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Alphabet lengths have no common shift period that fits an int");
+            }
+        }
+        this.shiftPeriod = (int) period;
+        this.fallbackMin = min;
+
+        this.dense = new int[denseLength];
+        Arrays.fill(dense, NOT_FOUND);
+        // Keep the hash table at most half full so that probe sequences stay short
+        int capacity = fallbackCount == 0 ? 0 : Integer.highestOneBit(fallbackCount * 4 - 1);
+        this.fallbackKeys = new char[capacity];
+        this.fallbackValues = new int[capacity];
+        for (int a = 0; a < alphabets.length; a++) {
+            Alphabet alphabet = alphabets[a];
+            for (int i = 0; i < alphabet.size(); i++) {
+                char letter = alphabet.letterAt(i);
+                int existing = locate(letter);
+                if (existing != NOT_FOUND) {
+                    throw new IllegalArgumentException("Letter '" + letter + "' is in both "
+                        + alphabets[existing >>> 16] + " and " + alphabet);
+                }
+                if (letter < DENSE_LIMIT) {
+                    dense[letter] = a << 16 | i;
+                } else {
+                    int slot = probe(letter);
+                    fallbackKeys[slot] = letter;
+                    fallbackValues[slot] = a << 16 | i;
+                }
+            }
+        }
+        this.engines = new CaesarCipher[Math.min(shiftPeriod, MAX_CACHED_ENGINES)];
+    }
+
+    /**
+     * Returns a registry holding the English and Russian alphabets, upper and lower case.
+     *
+     * @return The standard registry
+     */
+    public static AlphabetRegistry standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Creates a registry holding the given alphabets.
+     *
+     * @param alphabets The alphabets to register
+     * @return The compiled registry
+     * @throws IllegalArgumentException If no alphabet is given or two alphabets share a letter
+     */
+    public static AlphabetRegistry of(Alphabet... alphabets) {
+        if (alphabets.length == 0) {
+            throw new IllegalArgumentException("A registry needs at least one alphabet");
+        }
+        for (Alphabet alphabet : alphabets) {
+            Objects.requireNonNull(alphabet, "alphabet");
+        }
+        return new AlphabetRegistry(alphabets.clone());
+    }
+
+    /**
+     * Returns the registry used by the static methods of {@link CaesarCipher}.
+     *
+     * @return The default registry
+     */
+    public static AlphabetRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    /**
+     * Replaces the registry used by the static methods of {@link CaesarCipher}.
+     *
+     * @param registry The new default registry
+     */
+    public static void setDefault(AlphabetRegistry registry) {
+        defaultRegistry = Objects.requireNonNull(registry, "registry");
+    }
+
+    /**
+     * Returns a registry holding these alphabets followed by the given one.
+     *
+     * @param alphabet The alphabet to add
+     * @return The new registry
+     * @throws IllegalArgumentException If the alphabet shares a letter with a registered one
+     */
+    public AlphabetRegistry with(Alphabet alphabet) {
+        Alphabet[] extended = Arrays.copyOf(alphabets, alphabets.length + 1);
+        extended[alphabets.length] = Objects.requireNonNull(alphabet, "alphabet");
+        return new AlphabetRegistry(extended);
+    }
+
+    /**
+     * Returns the registered alphabets in registration order.
+     *
+     * @return The alphabets
+     */
+    public List<Alphabet> alphabets() {
+        return List.of(alphabets);
+    }
+
+    /**
+     * Returns the number of shifts after which every alphabet is back where it started,
+     * the least common multiple of the alphabet lengths.
+     *
+     * @return The shift period
+     */
+    public int shiftPeriod() {
+        return shiftPeriod;
+    }
+
+    /**
+     * Returns the alphabet the character belongs to.
+     *
+     * @param character The character to look up
+     * @return The alphabet, or null if the character is not a registered letter
+     */
+    public Alphabet alphabetOf(char character) {
+        int location = locate(character);
+        return location == NOT_FOUND ? null : alphabets[location >>> 16];
+    }
+
+    /**
+     * Returns the position of the character within its alphabet.
+     *
+     * @param character The character to look up
+     * @return The position, or -1 if the character is not a registered letter
+     */
+    public int indexOf(char character) {
+        int location = locate(character);
+        return location == NOT_FOUND ? -1 : location & 0xFFFF;
+    }
+
+    @Override
+    public String toString() {
+        return "AlphabetRegistry" + Arrays.toString(alphabets);
+    }
+
+    /**
+     * Returns the engine for the given shift, building and caching it on first use.
+     */
+    CaesarCipher engine(int shift) {
+        int normalized = Math.floorMod(shift, shiftPeriod);
+        if (normalized >= engines.length) {
+            return new CaesarCipher(this, normalized);
+        }
+        CaesarCipher engine = engines[normalized];
+        if (engine == null) {
+            engine = new CaesarCipher(this, normalized);
+            engines[normalized] = engine;
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the packed alphabet and position of the character as
+     * {@code alphabet << 16 | position}, or {@link #NOT_FOUND}.
+     */
+    int locate(char character) {
+        if (character < dense.length) {
+            return dense[character];
+        }
+        if (character < fallbackMin || fallbackKeys.length == 0) {
+            return NOT_FOUND;
+        }
+        int slot = probe(character);
+        return fallbackKeys[slot] == character ? fallbackValues[slot] : NOT_FOUND;
+    }
+
+    /**
+     * Returns the letter the located character is moved to by a normalized shift.
+     */
+    char shifted(int location, int shift) {
+        Alphabet alphabet = alphabets[location >>> 16];
+        return alphabet.letterAt((int) (((location & 0xFFFF) + (long) shift) % alphabet.size()));
+    }
+
+    /**
+     * Returns the length of the dense lookup range, one past the highest letter below
+     * {@link #DENSE_LIMIT}.
+     */
+    int denseLength() {
+        return dense.length;
+    }
+
+    /**
+     * Returns the lowest letter kept in the fallback table, or {@link Character#MAX_VALUE}
+     * if the table is empty.
+     */
+    char fallbackMin() {
+        return fallbackMin;
+    }
+
+    /**
+     * Returns the fallback letters in hash table order; empty slots hold {@code '\0'}.
+     */
+    char[] fallbackLetters() {
+        return fallbackKeys;
+    }
+
+    /**
+     * Returns the fallback table slot holding the character, or the empty slot where it
+     * would be inserted. Letters in the fallback table are never {@code '\0'}.
+     */
+    int fallbackSlot(char character) {
+        return probe(character);
+    }
+
+    private int probe(char character) {
+        int mask = fallbackKeys.length - 1;
+        int slot = (character * 0x9E3779B9 >>> 16) & mask;
+        while (fallbackKeys[slot] != 0 && fallbackKeys[slot] != character) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long lcm(long a, long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.vkpro;
+
+/**
+ * A bulk translator for runs of ASCII text whose letters are the English alphabets, each
+ * rotated by a fixed amount. The SIMD implementation lives in the optional {@code vector}
+ * source set and is only present when the application is built with {@code -Pvector} and
+ * started with {@code --add-modules jdk.incubator.vector}.
+ */
+interface AsciiKernel {
+
+    /**
+     * Returns the number of characters translated per step; shorter inputs gain nothing.
+     */
+    int blockSize();
+
+    /**
+     * Translates whole blocks from {@code from} onwards and stops before the first block
+     * that contains a non-ASCII character or does not fit before {@code to}.
+     *
+     * @param chars      The characters to translate in place
+     * @param from       The index of the first character
+     * @param to         The index after the last character
+     * @param lowerShift The rotation of a-z, from 0 to 25
+     * @param upperShift The rotation of A-Z, from 0 to 25
+     * @return The index of the first character left untranslated
+     */
+    int translate(char[] chars, int from, int to, int lowerShift, int upperShift);
+}
@@ -0,0 +1,181 @@
+package com.github.vkpro;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a stream of expressions, one per line, and writes one result line per input line.
+ * <p>
+ * Lines are read in batches on the calling thread, evaluated on a pool of worker threads and
+ * written in input order by a dedicated writer thread. The queue between reader and writer is
+ * bounded, so memory use stays constant however long the input is. An expression that fails
+ * to evaluate produces an {@code Error: ...} line instead of aborting the run; blank lines are
+ * copied through as blank lines.
+ */
+public final class BatchEvaluator {
+    private static final int BATCH_SIZE = 1024;
+
+    private static final String ERROR_PREFIX = "Error: ";
+
+    private static final Results END_OF_INPUT = new Results(new String[0], 0);
+
+    /**
+     * Totals for a completed batch run.
+     *
+     * @param lines  The number of lines read
+     * @param errors The number of lines that failed to evaluate
+     */
+    public record Summary(long lines, long errors) {
+    }
+
+    private record Results(String[] lines, int errors) {
+    }
+
+    private BatchEvaluator() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Evaluates every line of the input file into the output file using one worker per processor.
+     *
+     * @param input  The file holding one expression per line
+     * @param output The file receiving one result per line
+     * @return The totals for the run
+     * @throws IOException If reading or writing fails
+     */
+    public static Summary evaluateFile(Path input, Path output) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return evaluate(reader, writer, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Evaluates every line read from the reader and writes the results to the writer.
+     * Neither stream is closed; the writer is flushed.
+     *
+     * @param reader  The source of expressions, one per line
+     * @param writer  The destination of results, one per line
+     * @param workers The number of threads evaluating expressions
+     * @return The totals for the run
+     * @throws IOException If reading or writing fails
+     */
+    public static Summary evaluate(BufferedReader reader, Writer writer, int workers) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workers);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+        BlockingQueue<Future<Results>> pending = new ArrayBlockingQueue<>(workers * 4);
+        CompletableFuture<Long> written = CompletableFuture.supplyAsync(() -> writeResults(pending, writer),
+            writerExecutor);
+
+        long lines = 0;
+        try {
+            String[] batch = new String[BATCH_SIZE];
+            int size = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch[size++] = line;
+                lines++;
+                if (size == BATCH_SIZE) {
+                    String[] full = batch;
+                    enqueue(pending, executor.submit(() -> evaluateBatch(full)), written);
+                    batch = new String[BATCH_SIZE];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                String[] last = Arrays.copyOf(batch, size);
+                enqueue(pending, executor.submit(() -> evaluateBatch(last)), written);
+            }
+            enqueue(pending, CompletableFuture.completedFuture(END_OF_INPUT), written);
+            return new Summary(lines, written.join());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while evaluating expressions");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        } finally {
+            // Stops the writer too if reading failed and it is still waiting for batches
+            writerExecutor.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Results evaluateBatch(String[] batch) {
+        String[] results = new String[batch.length];
+        int errors = 0;
+        for (int i = 0; i < batch.length; i++) {
+            if (batch[i].isBlank()) {
+                results[i] = "";
+                continue;
+            }
+            try {
+                results[i] = ExpressionEvaluator.evaluateToString(batch[i]);
+            } catch (RuntimeException e) {
+                results[i] = ERROR_PREFIX + e.getMessage();
+                errors++;
+            }
+        }
+        return new Results(results, errors);
+    }
+
+    /**
+     * Queues a batch for the writer, giving up if the writer has already failed so that the
+     * reader never blocks on a queue nobody drains.
+     */
+    private static void enqueue(BlockingQueue<Future<Results>> pending, Future<Results> batch,
+                                CompletableFuture<Long> written) throws InterruptedException {
+        while (!pending.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (written.isDone()) {
+                written.join(); // Rethrows the writer's failure
+            }
+        }
+    }
+
+    private static long writeResults(BlockingQueue<Future<Results>> pending, Writer writer) {
+        long errors = 0;
+        try {
+            while (true) {
+                Results results = pending.take().get();
+                if (results == END_OF_INPUT) {
+                    writer.flush();
+                    return errors;
+                }
+                for (String line : results.lines()) {
+                    writer.write(line);
+                    writer.write(System.lineSeparator());
+                }
+                errors += results.errors();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Writer interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Evaluation failed", e.getCause());
+        }
+    }
+}
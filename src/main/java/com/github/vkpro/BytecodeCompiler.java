@@ -0,0 +1,272 @@
+package com.github.vkpro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates the postfix program of a {@link CompiledExpression} into a JVM hidden class
+ * whose single method computes the result with straight-line bytecode, such as
+ * {@code ldc2_w}, {@code daload}, {@code dadd} and {@code dmul}, that the JIT compiler can
+ * inline and optimize as a whole.
+ * <p>
+ * Division and remainder call {@link CompiledExpression#divide} and
+ * {@link CompiledExpression#remainder}, which throw the same {@link ArithmeticException}
+ * as the interpreter; the other functions call {@link Math}. The generated code therefore
+ * has no branches and needs no stack map frames. Hidden classes are not strongly linked to
+ * their class loader, so a generated class is unloaded once its expression is no longer
+ * reachable.
+ */
+final class BytecodeCompiler {
+
+    /**
+     * A compiled expression.
+     */
+    interface Program {
+        /**
+         * Evaluates the expression for one set of variable values.
+         */
+        double evaluate(double[] values);
+    }
+
+    // The method body is limited to 64 KiB; loading a variable takes the most bytes
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final int MAX_INSTRUCTION_LENGTH = 5;
+
+    // Each double constant takes two of the 65535 constant pool entries
+    private static final int MAX_CONSTANTS = 30_000;
+
+    private static final int CLASS_FILE_VERSION = 61;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int DALOAD = 0x31;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6B;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xAF;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+
+    private static final String CLASS_NAME = "com/github/vkpro/GeneratedExpression";
+    private static final String PROGRAM_NAME = Program.class.getName().replace('.', '/');
+    private static final String HELPER_NAME = CompiledExpression.class.getName().replace('.', '/');
+
+    private BytecodeCompiler() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Returns whether a program is small enough to fit the limits of a class file.
+     */
+    static boolean canCompile(int instructions, int constants, int variables) {
+        return (long) instructions * MAX_INSTRUCTION_LENGTH < MAX_CODE_LENGTH
+            && constants <= MAX_CONSTANTS
+            && variables <= Short.MAX_VALUE;
+    }
+
+    /**
+     * Defines a hidden class for the program and returns an instance of it.
+     *
+     * @param code          The postfix instructions of the expression
+     * @param constants     The constants the instructions refer to
+     * @param variableCount The number of variables the instructions load
+     * @param maxDepth      The deepest the operand stack gets
+     * @return The compiled program
+     * @throws IllegalArgumentException If the program does not fit in a class file
+     * @throws UnsupportedOperationException If classes cannot be defined at run time, as in a native image
+     */
+    static Program compile(int[] code, double[] constants, int variableCount, int maxDepth) {
+        if (!canCompile(code.length, constants.length, variableCount)) {
+            throw new IllegalArgumentException("Expression too large to compile: " + code.length + " instructions");
+        }
+        byte[] bytes = new ClassWriter().write(code, constants, maxDepth);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Program) lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate compiled expression", e);
+        }
+    }
+
+    /**
+     * Writes the class file: a final class implementing {@link Program} with a no-argument
+     * constructor and the {@code evaluate} method.
+     */
+    private static final class ClassWriter {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<Object, Integer> entries = new HashMap<>();
+        private int poolCount = 1;
+
+        byte[] write(int[] code, double[] constants, int maxDepth) {
+            try {
+                int thisClass = classEntry(CLASS_NAME);
+                int superClass = classEntry("java/lang/Object");
+                int programInterface = classEntry(PROGRAM_NAME);
+                int objectInit = methodEntry("java/lang/Object", "<init>", "()V");
+                int initName = utf8("<init>");
+                int initType = utf8("()V");
+                int evaluateName = utf8("evaluate");
+                int evaluateType = utf8("([D)D");
+                int codeName = utf8("Code");
+                byte[] evaluate = evaluate(code, constants);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(CLASS_FILE_VERSION);
+                out.writeShort(poolCount);
+                poolBytes.writeTo(out);
+                out.writeShort(ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(programInterface);
+                out.writeShort(0);
+                out.writeShort(2);
+
+                byte[] init = {
+                    (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN
+                };
+                writeMethod(out, ACC_PUBLIC, initName, initType, codeName, 1, 1, init);
+                // Every operand is a double taking two slots; loading a variable briefly adds the array and index
+                writeMethod(out, ACC_PUBLIC | ACC_FINAL, evaluateName, evaluateType, codeName, 2 * maxDepth + 2, 2,
+                    evaluate);
+                out.writeShort(0);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte[] evaluate(int[] code, double[] constants) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.length * 3 + 1);
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int instruction : code) {
+                int operand = instruction >>> 8;
+                switch (instruction & 0xFF) {
+                    case CompiledExpression.PUSH -> {
+                        out.writeByte(LDC2_W);
+                        out.writeShort(doubleEntry(constants[operand]));
+                    }
+                    case CompiledExpression.LOAD -> {
+                        out.writeByte(ALOAD_1);
+                        out.writeByte(SIPUSH);
+                        out.writeShort(operand);
+                        out.writeByte(DALOAD);
+                    }
+                    case CompiledExpression.NEGATE -> out.writeByte(DNEG);
+                    case CompiledExpression.ADD -> out.writeByte(DADD);
+                    case CompiledExpression.SUBTRACT -> out.writeByte(DSUB);
+                    case CompiledExpression.MULTIPLY -> out.writeByte(DMUL);
+                    case CompiledExpression.DIVIDE -> invokeStatic(out, HELPER_NAME, "divide", "(DD)D");
+                    case CompiledExpression.MODULO -> invokeStatic(out, HELPER_NAME, "remainder", "(DD)D");
+                    case CompiledExpression.POWER -> invokeStatic(out, "java/lang/Math", "pow", "(DD)D");
+                    case CompiledExpression.MIN -> invokeStatic(out, "java/lang/Math", "min", "(DD)D");
+                    case CompiledExpression.MAX -> invokeStatic(out, "java/lang/Math", "max", "(DD)D");
+                    case CompiledExpression.SQRT -> invokeStatic(out, "java/lang/Math", "sqrt", "(D)D");
+                    case CompiledExpression.ABS -> invokeStatic(out, "java/lang/Math", "abs", "(D)D");
+                    default -> throw new IllegalStateException("Unknown instruction: " + instruction);
+                }
+            }
+            out.writeByte(DRETURN);
+            return bytes.toByteArray();
+        }
+
+        private void invokeStatic(DataOutputStream out, String owner, String name, String type) throws IOException {
+            out.writeByte(INVOKESTATIC);
+            out.writeShort(methodEntry(owner, name, type));
+        }
+
+        private static void writeMethod(DataOutputStream out, int access, int name, int type, int codeName,
+                                        int maxStack, int maxLocals, byte[] code) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private int utf8(String value) throws IOException {
+            Integer index = entries.get(value);
+            if (index == null) {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+                index = poolCount++;
+                entries.put(value, index);
+            }
+            return index;
+        }
+
+        private int classEntry(String name) throws IOException {
+            String key = "Class " + name;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                pool.writeByte(7);
+                pool.writeShort(nameIndex);
+                index = poolCount++;
+                entries.put(key, index);
+            }
+            return index;
+        }
+
+        private int methodEntry(String owner, String name, String type) throws IOException {
+            String key = "Method " + owner + "." + name + type;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int ownerIndex = classEntry(owner);
+                int nameIndex = utf8(name);
+                int typeIndex = utf8(type);
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(typeIndex);
+                int nameAndType = poolCount++;
+                pool.writeByte(10);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+                index = poolCount++;
+                entries.put(key, index);
+            }
+            return index;
+        }
+
+        private int doubleEntry(double value) throws IOException {
+            // Keyed by bits so that 0.0 and -0.0, and every NaN, stay distinct
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = entries.get(bits);
+            if (index == null) {
+                pool.writeByte(6);
+                pool.writeLong(bits);
+                index = poolCount;
+                poolCount += 2;
+                entries.put(bits, index);
+            }
+            return index;
+        }
+    }
+}
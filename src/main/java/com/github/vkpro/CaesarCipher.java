@@ -1,15 +1,121 @@
 package com.github.vkpro;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Implementation of the Caesar cipher encryption and decryption algorithm.
  * This class supports both English and Russian alphabets, handling both uppercase
- * and lowercase letters while preserving non-alphabetic characters.
+ * and lowercase letters while preserving non-alphabetic characters. Further alphabets
+ * can be added through an {@link AlphabetRegistry}.
+ * <p>
+ * Each instance is an immutable translation engine for one shift value. The engine is
+ * built once as a dense {@code char[]} table, so translating a character is a single
+ * array load; letters beyond the dense range are translated through a small hash table.
+ * Instances are cached per registry and normalized shift and are safe to share between
+ * threads.
+ * <p>
+ * When the application is built with {@code -Pvector} and run with
+ * {@code --add-modules jdk.incubator.vector}, long ranges of ASCII text are translated
+ * with SIMD instructions; the {@code vkpro.vector} system property set to {@code false}
+ * turns this off. Results are identical either way.
  */
 public class CaesarCipher {
-    private static final String ENGLISH_LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
-    private static final String ENGLISH_UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final String RUSSIAN_LOWERCASE = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
-    private static final String RUSSIAN_UPPERCASE = "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ";
+    /**
+     * Number of characters translated per read when streaming.
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Inputs shorter than this many characters are translated on the calling thread.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Number of characters a single fork-join task translates.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * Returned by {@link #applyUtf8} when the input cannot be translated byte by byte.
+     */
+    static final int MALFORMED = -1;
+
+    /**
+     * Ranges shorter than this many characters are always translated by the scalar loop.
+     */
+    static final int VECTOR_THRESHOLD = 64;
+
+    /**
+     * The SIMD translator for ASCII text, or null when the vector build is not present.
+     */
+    private static final AsciiKernel ASCII_KERNEL = loadAsciiKernel();
+
+    private final AlphabetRegistry registry;
+    private final int shift;
+    private final char[] table;
+    private final char fallbackMin;
+    private final char[] fallbackLetters;
+    private final char[] fallbackTranslations;
+    // Rotations of a-z and A-Z if every other ASCII character is unchanged, or -1
+    private final int lowerShift;
+    private final int upperShift;
+
+    CaesarCipher(AlphabetRegistry registry, int shift) {
+        this.registry = registry;
+        this.shift = shift;
+        this.table = buildTable(registry, shift);
+        this.fallbackMin = registry.fallbackMin();
+        this.fallbackLetters = registry.fallbackLetters();
+        this.fallbackTranslations = new char[fallbackLetters.length];
+        for (int slot = 0; slot < fallbackLetters.length; slot++) {
+            char letter = fallbackLetters[slot];
+            if (letter != 0) {
+                fallbackTranslations[slot] = registry.shifted(registry.locate(letter), shift);
+            }
+        }
+        int lower = (apply('a') - 'a' + 26) % 26;
+        int upper = (apply('A') - 'A' + 26) % 26;
+        boolean rotation = true;
+        for (char c = 0; c < 0x80 && rotation; c++) {
+            char expected = c >= 'a' && c <= 'z' ? (char) ('a' + (c - 'a' + lower) % 26)
+                : c >= 'A' && c <= 'Z' ? (char) ('A' + (c - 'A' + upper) % 26)
+                : c;
+            rotation = apply(c) == expected;
+        }
+        this.lowerShift = rotation ? lower : -1;
+        this.upperShift = rotation ? upper : -1;
+    }
+
+    /**
+     * Returns the cipher engine for the given shift over the default alphabets.
+     *
+     * @param shift The number of positions to shift each character (positive for right shift)
+     * @return A shared engine for the shift
+     */
+    public static CaesarCipher forShift(int shift) {
+        return AlphabetRegistry.getDefault().engine(shift);
+    }
+
+    /**
+     * Returns the cipher engine for the given shift over the alphabets of the registry.
+     *
+     * @param shift    The number of positions to shift each character (positive for right shift)
+     * @param registry The alphabets the engine translates
+     * @return A shared engine for the shift
+     */
+    public static CaesarCipher forShift(int shift, AlphabetRegistry registry) {
+        return registry.engine(shift);
+    }
 
     /**
      * Encrypts the given text using the Caesar cipher algorithm.
@@ -19,63 +125,480 @@ public class CaesarCipher {
      * @return The encrypted text
      */
     public static String encrypt(String text, int shift) {
-        StringBuilder result = new StringBuilder();
-
-        for (char character : text.toCharArray()) {
-            if (Character.isLetter(character)) {
-                String alphabet;
-                int alphabetLength;
-                int charPosition;
-
-                // Determine which alphabet to use
-                if (ENGLISH_LOWERCASE.indexOf(character) != -1) {
-                    alphabet = ENGLISH_LOWERCASE;
-                    alphabetLength = ENGLISH_LOWERCASE.length();
-                    charPosition = ENGLISH_LOWERCASE.indexOf(character);
-                } else if (ENGLISH_UPPERCASE.indexOf(character) != -1) {
-                    alphabet = ENGLISH_UPPERCASE;
-                    alphabetLength = ENGLISH_UPPERCASE.length();
-                    charPosition = ENGLISH_UPPERCASE.indexOf(character);
-                } else if (RUSSIAN_LOWERCASE.indexOf(character) != -1) {
-                    alphabet = RUSSIAN_LOWERCASE;
-                    alphabetLength = RUSSIAN_LOWERCASE.length();
-                    charPosition = RUSSIAN_LOWERCASE.indexOf(character);
-                } else if (RUSSIAN_UPPERCASE.indexOf(character) != -1) {
-                    alphabet = RUSSIAN_UPPERCASE;
-                    alphabetLength = RUSSIAN_UPPERCASE.length();
-                    charPosition = RUSSIAN_UPPERCASE.indexOf(character);
-                } else {
-                    // This should not happen as we already checked isLetter
-                    result.append(character);
-                    continue;
+        return forShift(shift).apply(text);
+    }
+
+    /**
+     * Decrypts the given text that was encrypted using the Caesar cipher algorithm.
+     *
+     * @param text  The text to decrypt
+     * @param shift The original shift value used for encryption
+     * @return The decrypted text
+     */
+    public static String decrypt(String text, int shift) {
+        // Decryption is just encryption with the negative shift
+        return encrypt(text, -shift);
+    }
+
+    /**
+     * Encrypts everything read from the reader and writes the result to the writer.
+     * Memory use is constant regardless of the input size. Neither stream is closed.
+     *
+     * @param reader The source of the text to encrypt
+     * @param writer The destination of the encrypted text
+     * @param shift  The number of positions to shift each character (positive for right shift)
+     * @throws IOException If reading or writing fails
+     */
+    public static void encrypt(Reader reader, Writer writer, int shift) throws IOException {
+        forShift(shift).apply(reader, writer);
+    }
+
+    /**
+     * Decrypts everything read from the reader and writes the result to the writer.
+     * Memory use is constant regardless of the input size. Neither stream is closed.
+     *
+     * @param reader The source of the text to decrypt
+     * @param writer The destination of the decrypted text
+     * @param shift  The original shift value used for encryption
+     * @throws IOException If reading or writing fails
+     */
+    public static void decrypt(Reader reader, Writer writer, int shift) throws IOException {
+        encrypt(reader, writer, -shift);
+    }
+
+    /**
+     * Encrypts the given text, splitting large inputs across the common fork-join pool.
+     *
+     * @param text  The text to encrypt
+     * @param shift The number of positions to shift each character (positive for right shift)
+     * @return The encrypted text
+     */
+    public static String encryptParallel(CharSequence text, int shift) {
+        return encryptParallel(text, shift, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypts the given text, splitting large inputs across the given fork-join pool.
+     * The pool's parallelism determines how many threads take part.
+     *
+     * @param text  The text to encrypt
+     * @param shift The number of positions to shift each character (positive for right shift)
+     * @param pool  The pool that runs the translation tasks
+     * @return The encrypted text
+     */
+    public static String encryptParallel(CharSequence text, int shift, ForkJoinPool pool) {
+        return forShift(shift).applyParallel(text, pool);
+    }
+
+    /**
+     * Decrypts the given text, splitting large inputs across the common fork-join pool.
+     *
+     * @param text  The text to decrypt
+     * @param shift The original shift value used for encryption
+     * @return The decrypted text
+     */
+    public static String decryptParallel(CharSequence text, int shift) {
+        return encryptParallel(text, -shift);
+    }
+
+    /**
+     * Detects the shift the given text was encrypted with by letter frequency analysis.
+     *
+     * @param text The ciphertext
+     * @return The most likely shift and the confidence in it
+     */
+    public static ShiftDetector.Estimate detectShift(CharSequence text) {
+        return ShiftDetector.detect(text, AlphabetRegistry.getDefault());
+    }
+
+    /**
+     * Detects the shift of everything read from the reader in a single streaming pass.
+     * The reader is not closed.
+     *
+     * @param reader The source of the ciphertext
+     * @return The most likely shift and the confidence in it
+     * @throws IOException If reading fails
+     */
+    public static ShiftDetector.Estimate detectShift(Reader reader) throws IOException {
+        return ShiftDetector.detect(reader, AlphabetRegistry.getDefault());
+    }
+
+    /**
+     * Detects the shift of a UTF-8 file, reading only evenly spaced samples adding up to
+     * about {@code sampleSize} bytes when the file is larger than that.
+     *
+     * @param file       The ciphertext file
+     * @param sampleSize The maximum number of bytes to read, or {@link Long#MAX_VALUE} to read everything
+     * @return The most likely shift and the confidence in it
+     * @throws IOException If reading fails
+     */
+    public static ShiftDetector.Estimate detectShift(Path file, long sampleSize) throws IOException {
+        return ShiftDetector.detect(file, sampleSize, AlphabetRegistry.getDefault());
+    }
+
+    /**
+     * Returns the normalized shift of this engine, in the range from 0 up to the
+     * {@linkplain AlphabetRegistry#shiftPeriod() shift period} of its registry
+     * (858 for the standard alphabets).
+     *
+     * @return The shift applied by this engine
+     */
+    public int shift() {
+        return shift;
+    }
+
+    /**
+     * Returns the alphabets this engine translates.
+     *
+     * @return The registry the engine was built from
+     */
+    public AlphabetRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Returns the engine that reverses this one.
+     *
+     * @return The decryption engine for this shift
+     */
+    public CaesarCipher inverse() {
+        return registry.engine(-shift);
+    }
+
+    /**
+     * Translates a single character. Non-alphabetic characters are returned unchanged.
+     *
+     * @param character The character to translate
+     * @return The translated character
+     */
+    public char apply(char character) {
+        if (character < table.length) {
+            return table[character];
+        }
+        return character >= fallbackMin ? translateFallback(character) : character;
+    }
+
+    /**
+     * Translates the given text.
+     *
+     * @param text The text to translate
+     * @return The translated text
+     */
+    public String apply(String text) {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.CIPHER);
+        char[] chars = text.toCharArray();
+        apply(chars, 0, chars.length);
+        sample.success(chars.length);
+        return new String(chars);
+    }
+
+    /**
+     * Translates the given text, splitting it into chunks that are translated on the given
+     * pool when it is long enough to benefit. Each chunk writes into its own range of a
+     * single preallocated result array.
+     *
+     * @param text The text to translate
+     * @param pool The pool that runs the translation tasks
+     * @return The translated text
+     */
+    public String applyParallel(CharSequence text, ForkJoinPool pool) {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.CIPHER);
+        char[] result = new char[text.length()];
+        if (result.length < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            copyChars(text, 0, result.length, result);
+            apply(result, 0, result.length);
+        } else {
+            pool.invoke(new TranslateTask(this, text, result, 0, result.length));
+        }
+        sample.success(result.length);
+        return new String(result);
+    }
+
+    /**
+     * Translates a range of a character array in place.
+     *
+     * @param chars  The characters to translate
+     * @param offset The index of the first character to translate
+     * @param length The number of characters to translate
+     */
+    public void apply(char[] chars, int offset, int length) {
+        if (ASCII_KERNEL != null && lowerShift >= 0 && length >= VECTOR_THRESHOLD) {
+            applyVector(ASCII_KERNEL, chars, offset, offset + length);
+        } else {
+            applyScalar(chars, offset, offset + length);
+        }
+    }
+
+    /**
+     * Returns whether translations of long ranges use the SIMD kernel.
+     *
+     * @return True if the vector build is present and this engine rotates ASCII letters only
+     */
+    boolean isVectorized() {
+        return ASCII_KERNEL != null && lowerShift >= 0;
+    }
+
+    /**
+     * Lets the kernel translate as many blocks as it can and translates each block it
+     * stops at, which holds a non-ASCII character or is the incomplete tail, with the
+     * scalar loop.
+     */
+    private void applyVector(AsciiKernel kernel, char[] chars, int from, int to) {
+        int block = kernel.blockSize();
+        int i = from;
+        while (i < to) {
+            i = kernel.translate(chars, i, to, lowerShift, upperShift);
+            int stop = Math.min(to, i + block);
+            applyScalar(chars, i, stop);
+            i = stop;
+        }
+    }
+
+    private void applyScalar(char[] chars, int from, int end) {
+        char[] table = this.table;
+        char fallbackMin = this.fallbackMin;
+        for (int i = from; i < end; i++) {
+            char c = chars[i];
+            if (c < table.length) {
+                chars[i] = table[c];
+            } else if (c >= fallbackMin) {
+                chars[i] = translateFallback(c);
+            }
+        }
+    }
+
+    /**
+     * Translates everything read from the reader in fixed-size chunks and writes the result
+     * to the writer. Neither stream is closed; the writer is flushed.
+     *
+     * @param reader The source of the text to translate
+     * @param writer The destination of the translated text
+     * @throws IOException If reading or writing fails
+     */
+    public void apply(Reader reader, Writer writer) throws IOException {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.CIPHER);
+        char[] buffer = new char[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        try {
+            while ((read = reader.read(buffer)) != -1) {
+                apply(buffer, 0, read);
+                writer.write(buffer, 0, read);
+                total += read;
+            }
+            writer.flush();
+        } catch (IOException e) {
+            sample.failure(e);
+            throw e;
+        }
+        sample.success(total);
+    }
+
+    /**
+     * Translates UTF-8 encoded text directly from one byte buffer into another without
+     * decoding it to characters. Every letter keeps the length of its encoding, so each
+     * byte is written at the same offset from the destination position as it was read
+     * from the source position. Both positions are advanced past the translated bytes.
+     * <p>
+     * When {@code endOfInput} is false, an incomplete sequence at the end of the source is
+     * left unconsumed so that it can be retried together with the following bytes.
+     *
+     * @param source      The UTF-8 bytes to translate
+     * @param destination The buffer receiving the translated bytes
+     * @param endOfInput  Whether the source holds the final bytes of the input
+     * @return The number of bytes translated, or {@link #MALFORMED} if the source is not
+     *         valid UTF-8 or contains a letter whose translation has a different length
+     */
+    int applyUtf8(ByteBuffer source, ByteBuffer destination, boolean endOfInput) {
+        char[] table = this.table;
+        int start = source.position();
+        int limit = source.limit();
+        int offset = destination.position() - start;
+        int i = start;
+
+        while (i < limit) {
+            int b0 = source.get(i);
+            if (b0 >= 0) {
+                // ASCII fast path
+                char translated = b0 < table.length ? table[b0] : (char) b0;
+                if (translated >= 0x80) {
+                    return MALFORMED;
+                }
+                destination.put(i + offset, (byte) translated);
+                i++;
+                continue;
+            }
+
+            b0 &= 0xFF;
+            int length;
+            int lowest = 0x80;
+            int highest = 0xBF;
+            if (b0 >= 0xC2 && b0 <= 0xDF) {
+                length = 2;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+                length = 3;
+                if (b0 == 0xE0) {
+                    lowest = 0xA0; // Overlong encoding
+                } else if (b0 == 0xED) {
+                    highest = 0x9F; // Surrogate code points
+                }
+            } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+                length = 4;
+                if (b0 == 0xF0) {
+                    lowest = 0x90; // Overlong encoding
+                } else if (b0 == 0xF4) {
+                    highest = 0x8F; // Beyond U+10FFFF
+                }
+            } else {
+                return MALFORMED;
+            }
+
+            if (i + length > limit) {
+                if (endOfInput) {
+                    return MALFORMED;
                 }
+                break;
+            }
 
-                // Calculate new position with wrap-around
-                int newPosition = (charPosition + shift) % alphabetLength;
-                if (newPosition < 0) {
-                    newPosition += alphabetLength;
+            int b1 = source.get(i + 1) & 0xFF;
+            if (b1 < lowest || b1 > highest) {
+                return MALFORMED;
+            }
+            int codePoint = ((b0 & (0xFF >> (length + 1))) << 6) | (b1 & 0x3F);
+            for (int k = 2; k < length; k++) {
+                int bk = source.get(i + k) & 0xFF;
+                if (bk < 0x80 || bk > 0xBF) {
+                    return MALFORMED;
                 }
+                codePoint = (codePoint << 6) | (bk & 0x3F);
+            }
 
-                // Append the encrypted character
-                result.append(alphabet.charAt(newPosition));
+            int translated = codePoint < table.length ? table[codePoint]
+                : codePoint >= fallbackMin && codePoint <= Character.MAX_VALUE ? translateFallback((char) codePoint)
+                : codePoint;
+            if (translated != codePoint) {
+                int translatedLength = translated < 0x80 ? 1 : translated < 0x800 ? 2 : 3;
+                if (translatedLength != length) {
+                    return MALFORMED;
+                }
+                if (length == 2) {
+                    destination.put(i + offset, (byte) (0xC0 | (translated >> 6)));
+                    destination.put(i + offset + 1, (byte) (0x80 | (translated & 0x3F)));
+                } else {
+                    destination.put(i + offset, (byte) (0xE0 | (translated >> 12)));
+                    destination.put(i + offset + 1, (byte) (0x80 | ((translated >> 6) & 0x3F)));
+                    destination.put(i + offset + 2, (byte) (0x80 | (translated & 0x3F)));
+                }
             } else {
-                // Non-alphabetic characters remain unchanged
-                result.append(character);
+                for (int k = 0; k < length; k++) {
+                    destination.put(i + offset + k, source.get(i + k));
+                }
             }
+            i += length;
         }
 
-        return result.toString();
+        source.position(i);
+        destination.position(i + offset);
+        return i - start;
     }
 
     /**
-     * Decrypts the given text that was encrypted using the Caesar cipher algorithm.
+     * Translates UTF-8 encoded text like {@link #applyUtf8}, decoding and re-encoding it
+     * when that is not possible because a letter's translation has a different encoded
+     * length. The source position is advanced past the translated bytes.
      *
-     * @param text  The text to decrypt
-     * @param shift The original shift value used for encryption
-     * @return The decrypted text
+     * @param source      The UTF-8 bytes to translate
+     * @param destination A buffer with room for at least as many bytes as the source holds
+     * @param endOfInput  Whether the source holds the final bytes of the input
+     * @return The translated bytes, ready to be read: either the flipped destination or,
+     *         when the encoded length changed, a new buffer
+     * @throws CharacterCodingException If the source is not valid UTF-8
      */
-    public static String decrypt(String text, int shift) {
-        // Decryption is just encryption with the negative shift
-        return encrypt(text, -shift);
+    ByteBuffer applyUtf8Decoding(ByteBuffer source, ByteBuffer destination, boolean endOfInput)
+        throws CharacterCodingException {
+        destination.clear();
+        if (applyUtf8(source, destination, endOfInput) != MALFORMED) {
+            return destination.flip();
+        }
+        CharBuffer chars = CharBuffer.allocate(source.remaining());
+        CoderResult result = StandardCharsets.UTF_8.newDecoder().decode(source, chars, endOfInput);
+        if (result.isError()) {
+            result.throwException();
+        }
+        apply(chars.array(), 0, chars.position());
+        return StandardCharsets.UTF_8.encode(chars.flip());
+    }
+
+    private static void copyChars(CharSequence text, int from, int to, char[] destination) {
+        if (text instanceof String string) {
+            string.getChars(from, to, destination, from);
+        } else {
+            for (int i = from; i < to; i++) {
+                destination[i] = text.charAt(i);
+            }
+        }
+    }
+
+    private char translateFallback(char character) {
+        if (fallbackLetters.length == 0) {
+            return character;
+        }
+        int slot = registry.fallbackSlot(character);
+        return fallbackLetters[slot] == character ? fallbackTranslations[slot] : character;
+    }
+
+    private static AsciiKernel loadAsciiKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("vkpro.vector", "true"))) {
+            return null;
+        }
+        try {
+            return (AsciiKernel) Class.forName("com.github.vkpro.VectorAsciiKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Built without -Pvector, or started without --add-modules jdk.incubator.vector
+            return null;
+        }
+    }
+
+    private static char[] buildTable(AlphabetRegistry registry, int shift) {
+        // The table covers every character up to the highest letter of the dense range
+        // ('ё' for the standard alphabets)
+        char[] table = new char[registry.denseLength()];
+        for (int c = 0; c < table.length; c++) {
+            int location = registry.locate((char) c);
+            table[c] = location == AlphabetRegistry.NOT_FOUND ? (char) c : registry.shifted(location, shift);
+        }
+        return table;
+    }
+
+    /**
+     * Copies a range of the source text into the result array and translates it there,
+     * splitting ranges larger than {@link #PARALLEL_CHUNK_SIZE} in half.
+     */
+    private static final class TranslateTask extends RecursiveAction {
+        private final CaesarCipher cipher;
+        private final CharSequence text;
+        private final char[] result;
+        private final int from;
+        private final int to;
+
+        TranslateTask(CaesarCipher cipher, CharSequence text, char[] result, int from, int to) {
+            this.cipher = cipher;
+            this.text = text;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TranslateTask(cipher, text, result, from, middle),
+                    new TranslateTask(cipher, text, result, middle, to));
+                return;
+            }
+            copyChars(text, from, to, result);
+            cipher.apply(result, from, to - from);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,520 @@
+package com.github.vkpro;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A ciphertext container that can be decrypted piecewise, so that a character range or a
+ * few lines of a large encrypted file are read without decrypting the whole file.
+ * <p>
+ * The container holds a header with the shift and the alphabets of the cipher, the
+ * encrypted text split into chunks of about the same number of bytes, an index and a
+ * fixed-size footer. Chunks end on character boundaries and are encrypted independently.
+ * For each chunk the index records where it is stored, where its plaintext starts in the
+ * original file, and how many characters and line feeds come before it. All numbers are
+ * big-endian:
+ * <pre>
+ * header: magic "VKCC", version (byte), shift (int), alphabet count (int),
+ *         name and letters of each alphabet (modified UTF-8), chunk size (int)
+ * chunks: UTF-8 ciphertext
+ * index:  per chunk: position (long), length (int), plaintext position (long),
+ *         characters before (long), line feeds before (long)
+ * footer: index position (long), chunk count (int), characters (long),
+ *         lines (long), plaintext length (long), magic "VKCI"
+ * </pre>
+ * Characters are counted in UTF-16 code units, like the indexes of a {@link String}.
+ * Instances are safe to share between threads.
+ */
+public final class ChunkedFile implements Closeable {
+    /**
+     * The plaintext bytes per chunk used when none is given.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    // The smallest chunk that always holds a complete UTF-8 sequence
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    private static final int HEADER_MAGIC = 0x564B4343;
+    private static final int FOOTER_MAGIC = 0x564B4349;
+    private static final byte VERSION = 1;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 8 + 8 + 8;
+    private static final int FOOTER_SIZE = 8 + 4 + 8 + 8 + 8 + 4;
+
+    private final FileChannel channel;
+    private final CaesarCipher cipher;
+    private final long[] positions;
+    private final int[] lengths;
+    private final long[] plainPositions;
+    private final long[] charOffsets;
+    private final long[] lineOffsets;
+    private final long length;
+    private final long lines;
+    private final long plainLength;
+
+    private ChunkedFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < FOOTER_SIZE) {
+            throw new IOException("Not a chunked file: too short");
+        }
+        DataInputStream footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+        long indexPosition = footer.readLong();
+        int chunks = footer.readInt();
+        this.length = footer.readLong();
+        this.lines = footer.readLong();
+        this.plainLength = footer.readLong();
+        if (footer.readInt() != FOOTER_MAGIC || chunks < 0
+            || indexPosition < 0 || indexPosition + (long) chunks * INDEX_ENTRY_SIZE != size - FOOTER_SIZE) {
+            throw new IOException("Not a chunked file: invalid footer");
+        }
+
+        DataInputStream header = read(0, (int) Math.min(indexPosition, 64 * 1024));
+        if (header.readInt() != HEADER_MAGIC) {
+            throw new IOException("Not a chunked file: invalid header");
+        }
+        if (header.readByte() != VERSION) {
+            throw new IOException("Unsupported chunked file version");
+        }
+        int shift = header.readInt();
+        Alphabet[] alphabets = new Alphabet[header.readInt()];
+        for (int i = 0; i < alphabets.length; i++) {
+            alphabets[i] = new Alphabet(header.readUTF(), header.readUTF());
+        }
+        this.cipher = CaesarCipher.forShift(shift, registryOf(alphabets));
+
+        this.positions = new long[chunks];
+        this.lengths = new int[chunks];
+        this.plainPositions = new long[chunks];
+        this.charOffsets = new long[chunks];
+        this.lineOffsets = new long[chunks];
+        DataInputStream index = read(indexPosition, chunks * INDEX_ENTRY_SIZE);
+        for (int i = 0; i < chunks; i++) {
+            positions[i] = index.readLong();
+            lengths[i] = index.readInt();
+            plainPositions[i] = index.readLong();
+            charOffsets[i] = index.readLong();
+            lineOffsets[i] = index.readLong();
+        }
+    }
+
+    /**
+     * Opens a chunked file for reading.
+     *
+     * @param file The chunked file
+     * @return The opened file
+     * @throws IOException If the file cannot be read or is not a chunked file
+     */
+    public static ChunkedFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ChunkedFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether the file starts like a chunked file.
+     *
+     * @param file The file to check
+     * @return True if the file has the header of a chunked file
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isChunked(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < FOOTER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // Keep reading until the magic number is complete
+            }
+            return magic.flip().remaining() == 4 && magic.getInt() == HEADER_MAGIC;
+        }
+    }
+
+    /**
+     * Encrypts a UTF-8 file into a chunked file.
+     *
+     * @param input     The plaintext file
+     * @param output    The chunked file to write
+     * @param cipher    The cipher to encrypt with
+     * @param chunkSize The plaintext bytes per chunk
+     * @throws IOException If the input is not valid UTF-8 or a file cannot be read or written
+     */
+    public static void write(Path input, Path output, CaesarCipher cipher, int chunkSize) throws IOException {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be at least " + MIN_CHUNK_SIZE + ": " + chunkSize);
+        }
+        if (Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("The output must not be the input file: " + output);
+        }
+        try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = writeFully(target, ByteBuffer.wrap(header(cipher, chunkSize)), 0);
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+            ByteBuffer encrypted = ByteBuffer.allocate(chunkSize);
+            long size = source.size();
+            long read = 0;
+            long plainPosition = 0;
+            long chars = 0;
+            long lineFeeds = 0;
+            byte last = '\n';
+            int chunks = 0;
+            boolean end = false;
+            while (!end) {
+                int count = 0;
+                while (plain.hasRemaining() && read < size && (count = source.read(plain, read)) >= 0) {
+                    read += count;
+                }
+                // The file may shrink while it is read; whatever it grows by afterwards is ignored
+                end = read >= size || count < 0;
+                plain.flip();
+                int start = plain.position();
+                // A sequence cut off at the end of the buffer is left for the next chunk
+                ByteBuffer chunk = cipher.applyUtf8Decoding(plain, encrypted, end);
+                int consumed = plain.position() - start;
+                if (consumed > 0) {
+                    index.writeLong(position);
+                    index.writeInt(chunk.remaining());
+                    index.writeLong(plainPosition);
+                    index.writeLong(chars);
+                    index.writeLong(lineFeeds);
+                    chunks++;
+                    position = writeFully(target, chunk, position);
+                    for (int i = start; i < start + consumed; i++) {
+                        byte b = plain.get(i);
+                        // Every byte but a continuation byte starts a character; four-byte sequences need two
+                        chars += (b & 0xC0) != 0x80 ? 1 : 0;
+                        chars += (b & 0xF8) == 0xF0 ? 1 : 0;
+                        lineFeeds += b == '\n' ? 1 : 0;
+                    }
+                    last = plain.get(start + consumed - 1);
+                    plainPosition += consumed;
+                }
+                plain.compact();
+            }
+
+            long indexPosition = position;
+            index.writeLong(indexPosition);
+            index.writeInt(chunks);
+            index.writeLong(chars);
+            // A final line feed does not start another line
+            index.writeLong(last == '\n' ? lineFeeds : lineFeeds + 1);
+            index.writeLong(plainPosition);
+            index.writeInt(FOOTER_MAGIC);
+            writeFully(target, ByteBuffer.wrap(indexBytes.toByteArray()), indexPosition);
+        }
+    }
+
+    /**
+     * Returns the cipher the file was encrypted with.
+     *
+     * @return The encrypting cipher; its inverse decrypts the file
+     */
+    public CaesarCipher cipher() {
+        return cipher;
+    }
+
+    /**
+     * Returns the number of characters of the plaintext.
+     *
+     * @return The length in UTF-16 code units
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns the number of lines of the plaintext. A final line feed does not start
+     * another line.
+     *
+     * @return The line count
+     */
+    public long lineCount() {
+        return lines;
+    }
+
+    /**
+     * Returns the size of the plaintext.
+     *
+     * @return The size in UTF-8 bytes
+     */
+    public long plaintextSize() {
+        return plainLength;
+    }
+
+    /**
+     * Returns the number of chunks.
+     *
+     * @return The chunk count
+     */
+    public int chunkCount() {
+        return positions.length;
+    }
+
+    /**
+     * Decrypts a range of characters, reading only the chunks that hold it.
+     *
+     * @param from The index of the first character, inclusive
+     * @param to   The index after the last character
+     * @return The decrypted characters
+     * @throws IndexOutOfBoundsException If the range lies outside the plaintext
+     * @throws UncheckedIOException      If the file cannot be read
+     */
+    public String read(long from, long to) {
+        Objects.checkFromToIndex(from, to, length);
+        if (from == to) {
+            return "";
+        }
+        if (to - from > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Range too long for a string: " + (to - from));
+        }
+        StringBuilder text = new StringBuilder((int) (to - from));
+        for (int i = chunkOf(charOffsets, from); i < positions.length && charOffsets[i] < to; i++) {
+            String chunk = decryptChunk(i);
+            int start = (int) Math.max(0, from - charOffsets[i]);
+            int end = (int) Math.min(chunk.length(), to - charOffsets[i]);
+            text.append(chunk, start, end);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Decrypts a range of lines, reading only the chunks that hold them. Lines are separated
+     * by line feeds; a carriage return before a line feed is removed as well.
+     *
+     * @param from The index of the first line, inclusive, counting from 0
+     * @param to   The index after the last line
+     * @return The decrypted lines without their terminators
+     * @throws IndexOutOfBoundsException If the range lies outside the plaintext
+     * @throws UncheckedIOException      If the file cannot be read
+     */
+    public List<String> lines(long from, long to) {
+        Objects.checkFromToIndex(from, to, lines);
+        List<String> result = new ArrayList<>();
+        if (from == to) {
+            return result;
+        }
+        // Line n starts after line feed n - 1
+        int first = from == 0 ? 0 : chunkOf(lineOffsets, from - 1);
+        StringBuilder current = new StringBuilder();
+        long line = lineOffsets[first];
+        for (int i = first; i < positions.length; i++) {
+            String chunk = decryptChunk(i);
+            int start = 0;
+            while (start < chunk.length()) {
+                int lineFeed = chunk.indexOf('\n', start);
+                int end = lineFeed < 0 ? chunk.length() : lineFeed;
+                if (line >= from) {
+                    current.append(chunk, start, end);
+                }
+                if (lineFeed < 0) {
+                    break;
+                }
+                if (line >= from) {
+                    result.add(withoutCarriageReturn(current));
+                    current.setLength(0);
+                }
+                if (++line == to) {
+                    return result;
+                }
+                start = lineFeed + 1;
+            }
+        }
+        // The last line has no line feed
+        result.add(withoutCarriageReturn(current));
+        return result;
+    }
+
+    /**
+     * Decrypts the whole file one chunk at a time.
+     *
+     * @param writer The writer receiving the plaintext
+     * @throws IOException If the file cannot be read or the writer fails
+     */
+    public void decrypt(Writer writer) throws IOException {
+        try {
+            for (int i = 0; i < positions.length; i++) {
+                writer.write(decryptChunk(i));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Decrypts the whole file, with chunks decrypted concurrently on the common fork-join pool.
+     *
+     * @param output The plaintext file to write
+     * @throws IOException If a file cannot be read or written
+     */
+    public void decrypt(Path output) throws IOException {
+        decrypt(output, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypts the whole file, with chunks decrypted concurrently on the given pool. Every
+     * chunk is written straight to its place in the output.
+     *
+     * @param output The plaintext file to write
+     * @param pool   The pool to decrypt on
+     * @throws IOException If a file cannot be read or written
+     */
+    public void decrypt(Path output, ForkJoinPool pool) throws IOException {
+        try (FileChannel target = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (positions.length > 0) {
+                pool.invoke(new DecryptTask(target, 0, positions.length));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the last chunk whose offset is at most the given value.
+     */
+    private static int chunkOf(long[] offsets, long value) {
+        int index = Arrays.binarySearch(offsets, value);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // Chunks without any line feed share an offset with the next one
+        while (index + 1 < offsets.length && offsets[index + 1] == value) {
+            index++;
+        }
+        return index;
+    }
+
+    private String decryptChunk(int chunk) {
+        ByteBuffer bytes = readChunk(chunk);
+        return cipher.inverse().apply(new String(bytes.array(), 0, bytes.limit(), StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer readChunk(int chunk) {
+        ByteBuffer bytes = ByteBuffer.allocate(lengths[chunk]);
+        try {
+            readFully(bytes, positions[chunk]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.flip();
+    }
+
+    private DataInputStream read(long position, int size) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        readFully(bytes, position);
+        return new DataInputStream(new ByteArrayInputStream(bytes.array()));
+    }
+
+    private void readFully(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new EOFException("Chunked file is truncated");
+            }
+        }
+    }
+
+    private static long writeFully(FileChannel target, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += target.write(bytes, position);
+        }
+        return position;
+    }
+
+    private static byte[] header(CaesarCipher cipher, int chunkSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(HEADER_MAGIC);
+        header.writeByte(VERSION);
+        header.writeInt(cipher.shift());
+        List<Alphabet> alphabets = cipher.registry().alphabets();
+        header.writeInt(alphabets.size());
+        for (Alphabet alphabet : alphabets) {
+            header.writeUTF(alphabet.name());
+            header.writeUTF(alphabet.letters());
+        }
+        header.writeInt(chunkSize);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the standard registry if it holds the same alphabets, so that its cached
+     * cipher engines are shared.
+     */
+    private static AlphabetRegistry registryOf(Alphabet[] alphabets) {
+        List<Alphabet> standard = AlphabetRegistry.standard().alphabets();
+        boolean same = standard.size() == alphabets.length;
+        for (int i = 0; same && i < alphabets.length; i++) {
+            same = standard.get(i).name().equals(alphabets[i].name())
+                && standard.get(i).letters().equals(alphabets[i].letters());
+        }
+        return same ? AlphabetRegistry.standard() : AlphabetRegistry.of(alphabets);
+    }
+
+    private static String withoutCarriageReturn(StringBuilder line) {
+        int end = line.length();
+        return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+    }
+
+    /**
+     * Decrypts a run of chunks, splitting the run in half while it holds more than one chunk.
+     */
+    private final class DecryptTask extends RecursiveAction {
+        private final FileChannel target;
+        private final int from;
+        private final int to;
+
+        DecryptTask(FileChannel target, int from, int to) {
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecryptTask(target, from, middle), new DecryptTask(target, middle, to));
+                return;
+            }
+            try {
+                ByteBuffer chunk = readChunk(from);
+                ByteBuffer plain = cipher.inverse().applyUtf8Decoding(chunk, ByteBuffer.allocate(chunk.remaining()), true);
+                writeFully(target, plain, plainPositions[from]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.vkpro;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A connection to a {@link Server}. Requests are sent one at a time and each call waits
+ * for its response. Instances are not thread-safe; use one client per thread.
+ */
+public final class Client implements Closeable {
+    private final SocketChannel channel;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    private Client(SocketChannel channel) {
+        this.channel = channel;
+        this.reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects to a server on the loopback interface.
+     *
+     * @param port The TCP port the server listens on
+     * @return The connected client
+     * @throws IOException If the connection fails
+     */
+    public static Client connect(int port) throws IOException {
+        return connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Connects to a server on the given TCP or Unix domain socket address.
+     *
+     * @param address An {@link InetSocketAddress} or a {@link UnixDomainSocketAddress}
+     * @return The connected client
+     * @throws IOException If the connection fails
+     */
+    public static Client connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+            ? SocketChannel.open(StandardProtocolFamily.UNIX)
+            : SocketChannel.open();
+        try {
+            channel.connect(address);
+            if (address instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            return new Client(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a raw request line and returns the raw response line.
+     *
+     * @param request The request, without a line terminator
+     * @return The response, starting with {@code OK } or {@code ERROR }
+     * @throws IOException If the connection fails or the server closes it
+     */
+    public String request(String request) throws IOException {
+        if (request.indexOf('\n') >= 0 || request.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Requests cannot contain line breaks");
+        }
+        writer.write(request);
+        writer.write('\n');
+        writer.flush();
+        String response = reader.readLine();
+        if (response == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        return response;
+    }
+
+    /**
+     * Encrypts text on the server.
+     *
+     * @param shift The number of positions to shift each character
+     * @param text  The text to encrypt, on a single line
+     * @return The encrypted text
+     * @throws IOException If the connection fails
+     * @throws IllegalArgumentException If the server rejects the request
+     */
+    public String encrypt(int shift, String text) throws IOException {
+        return result(request("ENCRYPT " + shift + " " + text));
+    }
+
+    /**
+     * Decrypts text on the server.
+     *
+     * @param shift The original shift value used for encryption
+     * @param text  The text to decrypt, on a single line
+     * @return The decrypted text
+     * @throws IOException If the connection fails
+     * @throws IllegalArgumentException If the server rejects the request
+     */
+    public String decrypt(int shift, String text) throws IOException {
+        return result(request("DECRYPT " + shift + " " + text));
+    }
+
+    /**
+     * Evaluates an expression on the server.
+     *
+     * @param expression The expression, on a single line
+     * @return The formatted result
+     * @throws IOException If the connection fails
+     * @throws IllegalArgumentException If the expression cannot be evaluated
+     */
+    public String evaluate(String expression) throws IOException {
+        return result(request("EVAL " + expression));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static String result(String response) {
+        if (response.startsWith(Server.OK)) {
+            return response.substring(Server.OK.length());
+        }
+        if (response.startsWith(Server.ERROR)) {
+            throw new IllegalArgumentException(response.substring(Server.ERROR.length()));
+        }
+        throw new IllegalStateException("Unexpected response: " + response);
+    }
+}
@@ -0,0 +1,568 @@
+package com.github.vkpro;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-interactive entry point used when the application is started with arguments.
+ * <p>
+ * Each invocation runs a single command and returns an exit code, so the application can be
+ * scripted and used in pipelines. When no input or output file is given, standard input and
+ * standard output are used. Output goes through an unsynchronized buffered writer and is
+ * flushed once at the end.
+ */
+final class CommandLine {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILURE = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+        Usage:
+          encrypt --shift <n> [--in <file>] [--out <file>] [--format chunked] [text...]
+          decrypt --shift <n> [--in <file>] [--out <file>] [--chars <from>:<to> | --lines <first>:<last>] [text...]
+          detect [--in <file>] [--sample <bytes>] [text...]
+          eval [--in <file>] [--numeric exact|double] [expression...]
+          eval-file --in <file> --out <file> [--numeric exact|double]
+          follow --shift <n> --in <file> --out <file> [--checkpoint <file>] [--interval <ms>]
+          serve [--port <n> | --socket <file>]
+          client [--port <n> | --socket <file>] [request...]
+          help
+
+        Text and expressions are read from standard input when not given as arguments,
+        and results are written to standard output when no output file is given.
+        eval --in evaluates a whole file as one expression in a single streaming pass, so it
+        may be larger than memory or nested arbitrarily deep.
+        Expressions are computed exactly in decimal arithmetic, so 0.1+0.2 is 0.3 and large
+        integers keep every digit; --numeric double uses faster double arithmetic instead.
+        eval --in always uses double arithmetic.
+        detect prints the most likely shift of a ciphertext; with --sample, only about that
+        many bytes of a large file are read.
+        When --in is a directory, every file below it is written to the same relative
+        path below the --out directory.
+        encrypt --format chunked writes a seekable file from which decrypt --chars or --lines
+        reads only the requested part; the shift is stored in the file, so decrypt does not
+        need --shift. --chars takes character offsets from 0, end excluded; --lines takes
+        line numbers from 1, end included. Either end may be left out.
+        follow encrypts a growing file such as a log as it is appended to, until stopped.
+        Progress is saved to the checkpoint file (default: the output file name followed
+        by .checkpoint), so a restarted follow continues where the previous one stopped.
+        A negative shift decrypts.
+        serve answers ENCRYPT <shift> <text>, DECRYPT <shift> <text> and EVAL <expression>
+        lines on a loopback TCP port (default 7070) or a Unix domain socket until stopped.
+        client sends its arguments, or else every line of standard input, as requests and
+        prints the responses.
+        Add --metrics or --metrics=<file> to any command to report operation counts and
+        latencies as JSON on exit.
+        """;
+
+    private static final Set<String> OPTIONS_WITH_VALUES = Set.of("--shift", "--in", "--out", "--sample", "--eval-file",
+        "--port", "--socket", "--checkpoint", "--interval", "--format", "--chars", "--lines", "--numeric");
+
+    private static final long DEFAULT_FOLLOW_INTERVAL_MILLIS = 1000;
+
+    private CommandLine() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Runs the command given by the arguments against the process's standard streams.
+     *
+     * @param args The command line arguments
+     * @return The process exit code
+     */
+    static int run(String[] args) {
+        PrintStream err = new PrintStream(new FileOutputStream(FileDescriptor.err), true, StandardCharsets.UTF_8);
+        return run(args, new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out), err);
+    }
+
+    /**
+     * Runs the command given by the arguments.
+     *
+     * @param args The command line arguments
+     * @param in   The stream read when no input file or text is given
+     * @param out  The stream written when no output file is given
+     * @param err  The stream receiving error messages and usage help
+     * @return {@link #EXIT_OK} on success, {@link #EXIT_FAILURE} if the operation failed,
+     *         or {@link #EXIT_USAGE} if the arguments were invalid
+     */
+    static int run(String[] args, InputStream in, OutputStream out, PrintStream err) {
+        Arguments arguments;
+        try {
+            arguments = Arguments.parse(args);
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+
+        ExpressionEvaluator.NumericMode numericMode = ExpressionEvaluator.numericMode();
+        String numeric = arguments.options.get("--numeric");
+        if (numeric != null) {
+            switch (numeric.toLowerCase(Locale.ROOT)) {
+                case "exact" -> ExpressionEvaluator.setNumericMode(ExpressionEvaluator.NumericMode.EXACT);
+                case "double" -> ExpressionEvaluator.setNumericMode(ExpressionEvaluator.NumericMode.DOUBLE);
+                default -> {
+                    return usage(err, "--numeric must be exact or double: " + numeric);
+                }
+            }
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            return switch (arguments.command) {
+                case "encrypt" -> transform(arguments, in, writer, err, 1);
+                case "decrypt" -> transform(arguments, in, writer, err, -1);
+                case "detect" -> detect(arguments, in, writer, err);
+                case "eval" -> evaluate(arguments, in, writer, err);
+                case "eval-file", "--eval-file" -> evaluateFile(arguments, writer, err);
+                case "follow" -> follow(arguments, writer, err);
+                case "serve", "--serve" -> serve(arguments, writer, err);
+                case "client" -> client(arguments, in, writer, err);
+                case "help", "--help", "-h" -> {
+                    writer.write(USAGE);
+                    yield EXIT_OK;
+                }
+                default -> usage(err, "Unknown command: " + arguments.command);
+            };
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILURE;
+        } finally {
+            ExpressionEvaluator.setNumericMode(numericMode);
+        }
+    }
+
+    private static int transform(Arguments arguments, InputStream in, Writer out, PrintStream err,
+                                 int direction) throws IOException {
+        String input = arguments.options.get("--in");
+        if (direction < 0 && input != null && ChunkedFile.isChunked(Path.of(input))) {
+            return decryptChunked(arguments, Path.of(input), out, err);
+        }
+        if (arguments.options.containsKey("--chars") || arguments.options.containsKey("--lines")) {
+            return usage(err, "--chars and --lines need a chunked --in file to decrypt");
+        }
+        String shiftValue = arguments.options.get("--shift");
+        if (shiftValue == null) {
+            return usage(err, "Missing --shift");
+        }
+        int shift;
+        try {
+            shift = Integer.parseInt(shiftValue);
+        } catch (NumberFormatException e) {
+            return usage(err, "Shift must be a whole number: " + shiftValue);
+        }
+        CaesarCipher cipher = CaesarCipher.forShift(direction * shift);
+
+        String output = arguments.options.get("--out");
+        String format = arguments.options.get("--format");
+        if (input != null && !arguments.positional.isEmpty()) {
+            return usage(err, "Give either --in or text, not both");
+        }
+        if (format != null) {
+            if (!format.equals("chunked") || direction < 0) {
+                return usage(err, "Unknown format: " + format);
+            }
+            if (input == null || output == null || Files.isDirectory(Path.of(input))) {
+                return usage(err, "--format chunked needs an --in file and an --out file");
+            }
+            FileHandler.transformFileChunked(Path.of(input), Path.of(output), cipher);
+            return EXIT_OK;
+        }
+        if (input != null && Files.isDirectory(Path.of(input))) {
+            return transformDirectory(Path.of(input), output, cipher, out, err);
+        }
+        if (input != null && output != null) {
+            FileHandler.transformFileMapped(Path.of(input), Path.of(output), cipher);
+            return EXIT_OK;
+        }
+
+        try (Reader reader = openInput(arguments, input, in);
+             Writer writer = output != null ? Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8) : null) {
+            cipher.apply(reader, writer != null ? writer : out);
+            if (writer == null && !arguments.positional.isEmpty()) {
+                out.write(System.lineSeparator());
+            }
+        }
+        return EXIT_OK;
+    }
+
+    private static int decryptChunked(Arguments arguments, Path input, Writer out, PrintStream err) throws IOException {
+        String chars = arguments.options.get("--chars");
+        String lines = arguments.options.get("--lines");
+        String output = arguments.options.get("--out");
+        if (!arguments.positional.isEmpty()) {
+            return usage(err, "Give either --in or text, not both");
+        }
+        if (chars != null && lines != null) {
+            return usage(err, "Give either --chars or --lines, not both");
+        }
+        try (ChunkedFile file = ChunkedFile.open(input)) {
+            String shiftValue = arguments.options.get("--shift");
+            if (shiftValue != null) {
+                int shift;
+                try {
+                    shift = Integer.parseInt(shiftValue);
+                } catch (NumberFormatException e) {
+                    return usage(err, "Shift must be a whole number: " + shiftValue);
+                }
+                if (Math.floorMod(shift - file.cipher().shift(), file.cipher().registry().shiftPeriod()) != 0) {
+                    err.println("Error: " + input + " was not encrypted with shift " + shift);
+                    return EXIT_FAILURE;
+                }
+            }
+            long[] range;
+            try {
+                range = chars != null ? range(chars, 0, file.length())
+                    : lines != null ? range(lines, 1, file.lineCount())
+                    : null;
+            } catch (IllegalArgumentException e) {
+                return usage(err, e.getMessage());
+            }
+            if (range == null && output != null) {
+                file.decrypt(Path.of(output));
+                return EXIT_OK;
+            }
+            try (Writer writer = output != null ? Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8) : null) {
+                Writer target = writer != null ? writer : out;
+                if (range == null) {
+                    file.decrypt(target);
+                } else if (chars != null) {
+                    target.write(file.read(range[0], range[1]));
+                } else {
+                    for (String line : file.lines(range[0], range[1])) {
+                        target.write(line);
+                        target.write(System.lineSeparator());
+                    }
+                }
+            }
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Parses a {@code <start>:<end>} range into offsets from 0, end excluded. Character
+     * offsets ({@code first} 0) already count that way; line numbers ({@code first} 1)
+     * include the end, which makes the same end exclusive once the start counts from 0.
+     * Either number may be left out, and the range is clamped to the given length.
+     */
+    private static long[] range(String value, int first, long length) {
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Range must look like <start>:<end>: " + value);
+        }
+        long start;
+        long end;
+        try {
+            start = colon == 0 ? first : Long.parseLong(value.substring(0, colon));
+            end = colon == value.length() - 1 ? length : Long.parseLong(value.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Range must look like <start>:<end>: " + value);
+        }
+        if (start < first || end < start - first) {
+            throw new IllegalArgumentException("Invalid range: " + value);
+        }
+        long to = Math.min(length, end);
+        return new long[]{Math.min(start - first, to), to};
+    }
+
+    private static int transformDirectory(Path input, String output, CaesarCipher cipher, Writer out,
+                                          PrintStream err) throws IOException {
+        if (output == null) {
+            return usage(err, "A directory --in needs an --out directory");
+        }
+        DirectoryProcessor.Summary summary;
+        try {
+            summary = DirectoryProcessor.transformDirectory(input, Path.of(output), cipher);
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+        for (DirectoryProcessor.FileResult result : summary.files()) {
+            out.write(result.toString());
+            out.write(System.lineSeparator());
+        }
+        out.write(summary.toString());
+        out.write(System.lineSeparator());
+        return summary.failures() == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int detect(Arguments arguments, InputStream in, Writer out, PrintStream err) throws IOException {
+        String input = arguments.options.get("--in");
+        String sample = arguments.options.get("--sample");
+        if (input != null && !arguments.positional.isEmpty()) {
+            return usage(err, "Give either --in or text, not both");
+        }
+        long sampleSize = Long.MAX_VALUE;
+        if (sample != null) {
+            try {
+                sampleSize = Long.parseLong(sample);
+            } catch (NumberFormatException e) {
+                return usage(err, "Sample size must be a whole number: " + sample);
+            }
+            if (sampleSize < 1 || input == null) {
+                return usage(err, "--sample needs --in and a positive number of bytes");
+            }
+        }
+
+        ShiftDetector.Estimate estimate;
+        if (input != null) {
+            estimate = CaesarCipher.detectShift(Path.of(input), sampleSize);
+        } else {
+            try (Reader reader = openInput(arguments, null, in)) {
+                estimate = CaesarCipher.detectShift(reader);
+            }
+        }
+        out.write(estimate.toString());
+        out.write(System.lineSeparator());
+        return estimate.letters() > 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int evaluate(Arguments arguments, InputStream in, Writer out, PrintStream err) throws IOException {
+        String input = arguments.options.get("--in");
+        if (input != null) {
+            if (!arguments.positional.isEmpty()) {
+                return usage(err, "Give either --in or an expression, not both");
+            }
+            try (Reader reader = Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8)) {
+                out.write(ExpressionEvaluator.format(ExpressionEvaluator.evaluate(reader, ExpressionLimits.DEFAULT)));
+                out.write(System.lineSeparator());
+                return EXIT_OK;
+            } catch (RuntimeException e) {
+                err.println("Error: " + e.getMessage());
+                return EXIT_FAILURE;
+            }
+        }
+        if (!arguments.positional.isEmpty()) {
+            try {
+                out.write(ExpressionEvaluator.evaluateToString(String.join(" ", arguments.positional)));
+                out.write(System.lineSeparator());
+                return EXIT_OK;
+            } catch (RuntimeException e) {
+                err.println("Error: " + e.getMessage());
+                return EXIT_FAILURE;
+            }
+        }
+
+        // Without an argument every line of standard input is an expression
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        BatchEvaluator.Summary summary = BatchEvaluator.evaluate(reader, out,
+            Runtime.getRuntime().availableProcessors());
+        return summary.errors() == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int evaluateFile(Arguments arguments, Writer out, PrintStream err) throws IOException {
+        String input = arguments.options.getOrDefault("--in", arguments.options.get("--eval-file"));
+        String output = arguments.options.get("--out");
+        if (input == null || output == null) {
+            return usage(err, "eval-file needs --in and --out");
+        }
+        BatchEvaluator.Summary summary = BatchEvaluator.evaluateFile(Path.of(input), Path.of(output));
+        out.write("Evaluated " + summary.lines() + " lines (" + summary.errors() + " errors) into " + output);
+        out.write(System.lineSeparator());
+        return summary.errors() == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int follow(Arguments arguments, Writer out, PrintStream err) throws IOException {
+        String shiftValue = arguments.options.get("--shift");
+        String input = arguments.options.get("--in");
+        String output = arguments.options.get("--out");
+        if (shiftValue == null || input == null || output == null || !arguments.positional.isEmpty()) {
+            return usage(err, "follow needs --shift, --in and --out");
+        }
+        int shift;
+        long interval = DEFAULT_FOLLOW_INTERVAL_MILLIS;
+        try {
+            shift = Integer.parseInt(shiftValue);
+            if (arguments.options.containsKey("--interval")) {
+                interval = Long.parseLong(arguments.options.get("--interval"));
+            }
+        } catch (NumberFormatException e) {
+            return usage(err, "Shift and interval must be whole numbers");
+        }
+        if (interval < 1) {
+            return usage(err, "Interval must be positive: " + interval);
+        }
+        Path checkpoint = Path.of(arguments.options.getOrDefault("--checkpoint", output + ".checkpoint"));
+
+        FileFollower follower;
+        try {
+            follower = FileFollower.open(Path.of(input), Path.of(output), checkpoint, CaesarCipher.forShift(shift));
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+        Thread shutdown = new Thread(() -> {
+            try {
+                // Waits for a pass in progress, so the checkpoint matches the output
+                follower.close();
+            } catch (IOException e) {
+                // The process is exiting anyway
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        out.write("Following " + input + " into " + output);
+        out.write(System.lineSeparator());
+        out.flush();
+        try (follower) {
+            follower.follow(Duration.ofMillis(interval));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return EXIT_OK;
+    }
+
+    private static int serve(Arguments arguments, Writer out, PrintStream err) throws IOException {
+        SocketAddress address;
+        try {
+            address = serverAddress(arguments);
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+        Server server = Server.start(address);
+        Thread shutdown = new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // The process is exiting anyway
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        out.write("Listening on " + server.address());
+        out.write(System.lineSeparator());
+        out.flush();
+        try {
+            server.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.close();
+        }
+        return EXIT_OK;
+    }
+
+    private static int client(Arguments arguments, InputStream in, Writer out, PrintStream err) throws IOException {
+        SocketAddress address;
+        try {
+            address = serverAddress(arguments);
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+        int errors = 0;
+        try (Client client = Client.connect(address)) {
+            if (!arguments.positional.isEmpty()) {
+                errors += respond(client, String.join(" ", arguments.positional), out);
+            } else {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    errors += respond(client, line, out);
+                }
+            }
+        }
+        return errors == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int respond(Client client, String request, Writer out) throws IOException {
+        String response = client.request(request);
+        out.write(response);
+        out.write(System.lineSeparator());
+        return response.startsWith(Server.ERROR) ? 1 : 0;
+    }
+
+    private static SocketAddress serverAddress(Arguments arguments) {
+        String port = arguments.options.get("--port");
+        String socket = arguments.options.get("--socket");
+        if (port != null && socket != null) {
+            throw new IllegalArgumentException("Give either --port or --socket, not both");
+        }
+        if (socket != null) {
+            return UnixDomainSocketAddress.of(socket);
+        }
+        int number = Server.DEFAULT_PORT;
+        if (port != null) {
+            try {
+                number = Integer.parseInt(port);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Port must be a whole number: " + port);
+            }
+            if (number < 0 || number > 0xFFFF) {
+                throw new IllegalArgumentException("Port must be between 0 and 65535: " + port);
+            }
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), number);
+    }
+
+    private static Reader openInput(Arguments arguments, String input, InputStream in) throws IOException {
+        if (!arguments.positional.isEmpty()) {
+            return new StringReader(String.join(" ", arguments.positional));
+        }
+        if (input != null) {
+            return Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    private static int usage(PrintStream err, String message) {
+        err.println("Error: " + message);
+        err.print(USAGE);
+        return EXIT_USAGE;
+    }
+
+    /**
+     * The command name followed by its options and positional arguments.
+     */
+    private static final class Arguments {
+        String command;
+        final Map<String, String> options = new HashMap<>();
+        final List<String> positional = new ArrayList<>();
+
+        static Arguments parse(String[] args) {
+            Arguments arguments = new Arguments();
+            int i = 0;
+            if (!args[0].equals("--eval-file")) {
+                arguments.command = args[i++];
+            } else {
+                // The bare "--eval-file <file>" form is kept for compatibility with the batch flag
+                arguments.command = "--eval-file";
+            }
+            for (; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--")) {
+                    arguments.positional.addAll(List.of(args).subList(i + 1, args.length));
+                    break;
+                }
+                if (OPTIONS_WITH_VALUES.contains(arg)) {
+                    if (i + 1 == args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    arguments.options.put(arg, args[++i]);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    arguments.positional.add(arg);
+                }
+            }
+            return arguments;
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.github.vkpro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An arithmetic expression that has been parsed once by {@link ExpressionEvaluator#compile(String)}
+ * and can be evaluated any number of times.
+ * <p>
+ * The expression is held as a flat postfix program, generated from the optimized syntax
+ * tree, that runs on a primitive {@code double} stack. The program is immutable and may be
+ * shared between threads; each thread reuses its own stack, so evaluation does not allocate.
+ * The only mutable state is the bytecode tier below and its evaluation count, which stops
+ * changing once the threshold is reached.
+ * <p>
+ * Evaluation is tiered: once {@link #evaluate(double...)} has run more often than the
+ * compile threshold (see {@link ExpressionEvaluator#setCompileThreshold(int)}), the program
+ * is translated by {@link BytecodeCompiler} into a hidden class that the JIT compiler can
+ * optimize like hand-written code. Results and errors are the same in both tiers. Where
+ * classes cannot be defined at run time, as in a native image, the program stays interpreted.
+ * <p>
+ * Expressions may refer to named variables. Values are supplied either one row at a time
+ * through {@link #evaluate(double...)} or for many rows at once through
+ * {@link #evaluate(Map, double[])}, which runs each instruction over a block of rows at a
+ * time so that the inner loops work on plain primitive arrays.
+ */
+public final class CompiledExpression {
+    static final int PUSH = 0;
+    static final int ADD = 1;
+    static final int SUBTRACT = 2;
+    static final int MULTIPLY = 3;
+    static final int DIVIDE = 4;
+    static final int LOAD = 5;
+    static final int NEGATE = 6;
+    static final int POWER = 7;
+    static final int MODULO = 8;
+    static final int SQRT = 9;
+    static final int ABS = 10;
+    static final int MIN = 11;
+    static final int MAX = 12;
+
+    /**
+     * Number of rows each instruction processes at a time during bulk evaluation.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Bulk evaluations with fewer rows than this are not split across threads.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final double[] NO_VALUES = new double[0];
+
+    private static final ThreadLocal<double[]> STACK = ThreadLocal.withInitial(() -> new double[16]);
+
+    // Native images cannot define classes at run time
+    private static final boolean BYTECODE_SUPPORTED = System.getProperty("org.graalvm.nativeimage.imagecode") == null;
+
+    static volatile int compileThreshold = Integer.getInteger("vkpro.expression.compileThreshold", 10_000);
+
+    private final String source;
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int maxDepth;
+
+    // The bytecode tier, set once the expression is hot
+    private volatile BytecodeCompiler.Program compiled;
+    // Racy by design: a lost update only delays compilation. Counting stops at the threshold,
+    // so a hot expression shared between threads is no longer written to on every evaluation.
+    private int evaluations;
+    private volatile boolean compileFailed;
+
+    private CompiledExpression(String source, int[] code, double[] constants, String[] variables, int maxDepth) {
+        this.source = source;
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns the expression this program was compiled from.
+     *
+     * @return The source expression
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Returns the names of the variables the expression refers to, in order of first use.
+     * This is the order in which {@link #evaluate(double...)} expects their values.
+     *
+     * @return The variable names
+     */
+    public List<String> variables() {
+        return List.of(variables);
+    }
+
+    /**
+     * Evaluates an expression that has no variables.
+     *
+     * @return The result of the evaluated expression
+     * @throws IllegalArgumentException If the expression refers to variables
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    public double evaluate() {
+        return evaluate(NO_VALUES);
+    }
+
+    /**
+     * Evaluates the expression for one set of variable values.
+     *
+     * @param values The value of each variable, in the order given by {@link #variables()}
+     * @return The result of the evaluated expression
+     * @throws IllegalArgumentException If the number of values does not match the variables
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    public double evaluate(double... values) {
+        checkValueCount(values.length);
+
+        BytecodeCompiler.Program program = compiled;
+        if (program != null) {
+            return program.evaluate(values);
+        }
+        int threshold = compileThreshold;
+        if (threshold >= 0 && !compileFailed) {
+            int count = evaluations;
+            if (count < threshold) {
+                evaluations = count + 1;
+            } else {
+                program = compileBytecode();
+                if (program != null) {
+                    return program.evaluate(values);
+                }
+            }
+        }
+
+        double[] stack = STACK.get();
+        if (stack.length < maxDepth) {
+            stack = new double[maxDepth];
+            STACK.set(stack);
+        }
+
+        int top = -1;
+        for (int instruction : code) {
+            switch (instruction & 0xFF) {
+                case PUSH -> stack[++top] = constants[instruction >>> 8];
+                case LOAD -> stack[++top] = values[instruction >>> 8];
+                case NEGATE -> stack[top] = -stack[top];
+                case ADD -> {
+                    top--;
+                    stack[top] += stack[top + 1];
+                }
+                case SUBTRACT -> {
+                    top--;
+                    stack[top] -= stack[top + 1];
+                }
+                case MULTIPLY -> {
+                    top--;
+                    stack[top] *= stack[top + 1];
+                }
+                case DIVIDE -> {
+                    top--;
+                    if (stack[top + 1] == 0) {
+                        throw new ArithmeticException("Division by zero");
+                    }
+                    stack[top] /= stack[top + 1];
+                }
+                case MODULO -> {
+                    top--;
+                    if (stack[top + 1] == 0) {
+                        throw new ArithmeticException("Division by zero");
+                    }
+                    stack[top] %= stack[top + 1];
+                }
+                case POWER -> {
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                }
+                case MIN -> {
+                    top--;
+                    stack[top] = Math.min(stack[top], stack[top + 1]);
+                }
+                case MAX -> {
+                    top--;
+                    stack[top] = Math.max(stack[top], stack[top + 1]);
+                }
+                case SQRT -> stack[top] = Math.sqrt(stack[top]);
+                case ABS -> stack[top] = Math.abs(stack[top]);
+                default -> throw new IllegalStateException("Unknown instruction: " + instruction);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the expression for every row of the given columns on the calling thread.
+     *
+     * @param columns The values of each variable by name, one array element per row
+     * @param out     Receives the result for each row; its length is the number of rows
+     * @throws IllegalArgumentException If a variable has no column or a column is too short
+     * @throws ArithmeticException If any row divides by zero
+     */
+    public void evaluate(Map<String, double[]> columns, double[] out) {
+        evaluateRows(resolveColumns(columns, out.length), out, 0, out.length);
+    }
+
+    /**
+     * Evaluates the expression for every row of the given columns, splitting large row
+     * counts across the common fork-join pool.
+     *
+     * @param columns The values of each variable by name, one array element per row
+     * @param out     Receives the result for each row; its length is the number of rows
+     * @throws IllegalArgumentException If a variable has no column or a column is too short
+     * @throws ArithmeticException If any row divides by zero
+     */
+    public void evaluateParallel(Map<String, double[]> columns, double[] out) {
+        evaluateParallel(columns, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluates the expression for every row of the given columns, splitting large row
+     * counts across the given fork-join pool. Each task writes its own range of rows.
+     *
+     * @param columns The values of each variable by name, one array element per row
+     * @param out     Receives the result for each row; its length is the number of rows
+     * @param pool    The pool that runs the evaluation tasks
+     * @throws IllegalArgumentException If a variable has no column or a column is too short
+     * @throws ArithmeticException If any row divides by zero
+     */
+    public void evaluateParallel(Map<String, double[]> columns, double[] out, ForkJoinPool pool) {
+        double[][] resolved = resolveColumns(columns, out.length);
+        if (out.length < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            evaluateRows(resolved, out, 0, out.length);
+        } else {
+            pool.invoke(new BlockTask(this, resolved, out, 0, out.length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * Returns whether evaluation has moved to the bytecode tier.
+     */
+    boolean isBytecodeCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Divides as the {@link #DIVIDE} instruction does; called by compiled bytecode.
+     */
+    static double divide(double a, double b) {
+        if (b == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return a / b;
+    }
+
+    /**
+     * Takes the remainder as the {@link #MODULO} instruction does; called by compiled bytecode.
+     */
+    static double remainder(double a, double b) {
+        if (b == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return a % b;
+    }
+
+    /**
+     * Translates the program into bytecode, once. A program that is a single instruction,
+     * or that cannot be compiled, stays interpreted.
+     */
+    private synchronized BytecodeCompiler.Program compileBytecode() {
+        if (compiled == null && !compileFailed) {
+            if (!BYTECODE_SUPPORTED || code.length < 2
+                || !BytecodeCompiler.canCompile(code.length, constants.length, variables.length)) {
+                compileFailed = true;
+            } else {
+                try {
+                    compiled = BytecodeCompiler.compile(code, constants, variables.length, maxDepth);
+                } catch (RuntimeException | LinkageError e) {
+                    compileFailed = true;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the number of instructions in the program, which shows how far constant
+     * folding has reduced the expression.
+     */
+    int instructionCount() {
+        return code.length;
+    }
+
+    private void checkValueCount(int count) {
+        if (count < variables.length) {
+            throw new IllegalArgumentException("Missing value for variable: " + variables[count]);
+        }
+        if (count > variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " variable values but got " + count);
+        }
+    }
+
+    private double[][] resolveColumns(Map<String, double[]> columns, int rows) {
+        double[][] resolved = new double[variables.length][];
+        for (int v = 0; v < variables.length; v++) {
+            double[] column = columns.get(variables[v]);
+            if (column == null) {
+                throw new IllegalArgumentException("Missing column for variable: " + variables[v]);
+            }
+            if (column.length < rows) {
+                throw new IllegalArgumentException("Column " + variables[v] + " has " + column.length
+                    + " rows but " + rows + " are required");
+            }
+            resolved[v] = column;
+        }
+        return resolved;
+    }
+
+    private void evaluateRows(double[][] columns, double[] out, int from, int to) {
+        double[][] stack = new double[maxDepth][BLOCK_SIZE];
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            evaluateBlock(columns, stack, out, start, Math.min(BLOCK_SIZE, to - start));
+        }
+    }
+
+    /**
+     * Runs the program over rows {@code [from, from + count)}, one instruction at a time
+     * across the whole block, and copies the results into {@code out}.
+     */
+    private void evaluateBlock(double[][] columns, double[][] stack, double[] out, int from, int count) {
+        int top = -1;
+        for (int instruction : code) {
+            switch (instruction & 0xFF) {
+                case PUSH -> Arrays.fill(stack[++top], 0, count, constants[instruction >>> 8]);
+                case LOAD -> System.arraycopy(columns[instruction >>> 8], from, stack[++top], 0, count);
+                case NEGATE -> {
+                    double[] a = stack[top];
+                    for (int i = 0; i < count; i++) {
+                        a[i] = -a[i];
+                    }
+                }
+                case ADD -> {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < count; i++) {
+                        a[i] += b[i];
+                    }
+                }
+                case SUBTRACT -> {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < count; i++) {
+                        a[i] -= b[i];
+                    }
+                }
+                case MULTIPLY -> {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < count; i++) {
+                        a[i] *= b[i];
+                    }
+                }
+                case DIVIDE -> {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    // Check divisors in a separate pass so that the division loop stays branch-free
+                    for (int i = 0; i < count; i++) {
+                        if (b[i] == 0) {
+                            throw new ArithmeticException("Division by zero");
+                        }
+                    }
+                    for (int i = 0; i < count; i++) {
+                        a[i] /= b[i];
+                    }
+                }
+                case MODULO -> {
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < count; i++) {
+                        if (b[i] == 0) {
+                            throw new ArithmeticException("Division by zero");
+                        }
+                    }
+                    for (int i = 0; i < count; i++) {
+                        a[i] %= b[i];
+                    }
+                }
+                case POWER, MIN, MAX -> {
+                    int operation = instruction & 0xFF;
+                    double[] a = stack[--top];
+                    double[] b = stack[top + 1];
+                    for (int i = 0; i < count; i++) {
+                        a[i] = apply(operation, a[i], b[i]);
+                    }
+                }
+                case SQRT -> {
+                    double[] a = stack[top];
+                    for (int i = 0; i < count; i++) {
+                        a[i] = Math.sqrt(a[i]);
+                    }
+                }
+                case ABS -> {
+                    double[] a = stack[top];
+                    for (int i = 0; i < count; i++) {
+                        a[i] = Math.abs(a[i]);
+                    }
+                }
+                default -> throw new IllegalStateException("Unknown instruction: " + instruction);
+            }
+        }
+        System.arraycopy(stack[0], 0, out, from, count);
+    }
+
+    /**
+     * Applies a unary instruction to a constant, as the program would.
+     */
+    static double apply(int opcode, double a) {
+        return switch (opcode) {
+            case NEGATE -> -a;
+            case SQRT -> Math.sqrt(a);
+            case ABS -> Math.abs(a);
+            default -> throw new IllegalArgumentException("Not a unary instruction: " + opcode);
+        };
+    }
+
+    /**
+     * Applies a binary instruction to two constants, as the program would. Division and
+     * remainder by zero are not checked here.
+     */
+    static double apply(int opcode, double a, double b) {
+        return switch (opcode) {
+            case ADD -> a + b;
+            case SUBTRACT -> a - b;
+            case MULTIPLY -> a * b;
+            case DIVIDE -> a / b;
+            case MODULO -> a % b;
+            case POWER -> Math.pow(a, b);
+            case MIN -> Math.min(a, b);
+            case MAX -> Math.max(a, b);
+            default -> throw new IllegalArgumentException("Not a binary instruction: " + opcode);
+        };
+    }
+
+    /**
+     * Evaluates a range of rows, splitting ranges larger than a quarter of
+     * {@link #PARALLEL_THRESHOLD} in half.
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private final CompiledExpression expression;
+        private final double[][] columns;
+        private final double[] out;
+        private final int from;
+        private final int to;
+
+        BlockTask(CompiledExpression expression, double[][] columns, double[] out, int from, int to) {
+            this.expression = expression;
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD / 4) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockTask(expression, columns, out, from, middle),
+                    new BlockTask(expression, columns, out, middle, to));
+                return;
+            }
+            expression.evaluateRows(columns, out, from, to);
+        }
+    }
+
+    /**
+     * Accumulates the postfix program while the expression is parsed and tracks the depth
+     * of the operand stack, so that structural errors are found at compile time.
+     */
+    static final class Builder {
+        private int[] code = new int[16];
+        private int codeLength;
+        private double[] constants = new double[8];
+        private int constantCount;
+        private final List<String> variables = new ArrayList<>();
+        private int depth;
+        private int maxDepth;
+
+        /**
+         * Clears the builder so that its buffers can be reused for another expression.
+         */
+        void reset() {
+            codeLength = 0;
+            constantCount = 0;
+            variables.clear();
+            depth = 0;
+            maxDepth = 0;
+        }
+
+        /**
+         * Returns the number of operands on the stack at this point of the program.
+         */
+        int depth() {
+            return depth;
+        }
+
+        void pushConstant(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            emit(PUSH | (constantCount << 8));
+            constantCount++;
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        void loadVariable(String name) {
+            int index = variables.indexOf(name);
+            if (index == -1) {
+                index = variables.size();
+                variables.add(name);
+            }
+            emit(LOAD | (index << 8));
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Replaces the operand on top of the stack with the result of a unary instruction.
+         */
+        void applyUnary(int opcode) {
+            emit(opcode);
+        }
+
+        /**
+         * Replaces the two operands on top of the stack with the result of a binary instruction.
+         */
+        void applyBinary(int opcode) {
+            emit(opcode);
+            depth--;
+        }
+
+        CompiledExpression build(String source) {
+            return new CompiledExpression(source, Arrays.copyOf(code, codeLength),
+                Arrays.copyOf(constants, constantCount), variables.toArray(new String[0]), maxDepth);
+        }
+
+        private void emit(int instruction) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+            }
+            code[codeLength++] = instruction;
+        }
+    }
+}
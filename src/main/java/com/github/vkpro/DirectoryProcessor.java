@@ -0,0 +1,197 @@
+package com.github.vkpro;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Encrypts or decrypts every file of a directory tree into a mirrored output tree.
+ * <p>
+ * Each file is translated by {@link FileHandler#transformFileMapped} on its own virtual
+ * thread, so thousands of small files are processed concurrently without a thread pool to
+ * size. A semaphore bounds how many files are open at once. A file that cannot be
+ * translated is reported in the summary instead of aborting the run.
+ */
+public final class DirectoryProcessor {
+    /**
+     * Default number of files translated at the same time; each holds an input and an output channel.
+     */
+    static final int DEFAULT_MAX_OPEN_FILES = 128;
+
+    /**
+     * The outcome of translating one file.
+     *
+     * @param file  The file's path relative to the input directory
+     * @param bytes The size of the file in bytes
+     * @param nanos The time spent translating the file
+     * @param error The reason the file could not be translated, or null on success
+     */
+    public record FileResult(Path file, long bytes, long nanos, String error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            if (!succeeded()) {
+                return file + ": failed: " + error;
+            }
+            return String.format("%s: %d bytes in %.3f ms (%.1f MB/s)", file, bytes, nanos / 1e6,
+                megabytesPerSecond(bytes, nanos));
+        }
+    }
+
+    /**
+     * Totals for a directory run.
+     *
+     * @param files The result for each file, in the order the tree was walked
+     * @param nanos The wall-clock time of the whole run
+     */
+    public record Summary(List<FileResult> files, long nanos) {
+
+        /**
+         * Returns the number of bytes in the files that were translated successfully.
+         */
+        public long bytes() {
+            return files.stream().filter(FileResult::succeeded).mapToLong(FileResult::bytes).sum();
+        }
+
+        /**
+         * Returns the number of files that could not be translated.
+         */
+        public long failures() {
+            return files.stream().filter(result -> !result.succeeded()).count();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Processed %d files (%d failed), %d bytes in %.3f ms (%.1f MB/s)",
+                files.size(), failures(), bytes(), nanos / 1e6, megabytesPerSecond(bytes(), nanos));
+        }
+    }
+
+    private DirectoryProcessor() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Translates every regular file below the input directory into the same relative path
+     * below the output directory, creating directories as needed.
+     *
+     * @param input  The directory to read
+     * @param output The directory to write; it may not be the input directory or lie inside it
+     * @param cipher The cipher to apply to each file
+     * @return The per-file results and totals
+     * @throws IOException If the tree cannot be walked or the output directories cannot be created
+     */
+    public static Summary transformDirectory(Path input, Path output, CaesarCipher cipher) throws IOException {
+        return transformDirectory(input, output, cipher, DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * Translates every regular file below the input directory into the same relative path
+     * below the output directory, with at most the given number of files open at once.
+     * Symbolic links are not followed.
+     *
+     * @param input        The directory to read
+     * @param output       The directory to write; it may not be the input directory or lie inside it
+     * @param cipher       The cipher to apply to each file
+     * @param maxOpenFiles The maximum number of files translated at the same time
+     * @return The per-file results and totals
+     * @throws IOException If the tree cannot be walked or the output directories cannot be created
+     */
+    public static Summary transformDirectory(Path input, Path output, CaesarCipher cipher,
+                                             int maxOpenFiles) throws IOException {
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("Open file limit must be positive: " + maxOpenFiles);
+        }
+        if (!Files.isDirectory(input)) {
+            throw new NotDirectoryException(input.toString());
+        }
+        Path source = input.toAbsolutePath().normalize();
+        Path target = output.toAbsolutePath().normalize();
+        if (target.startsWith(source)) {
+            throw new IllegalArgumentException("Output directory must lie outside the input directory: " + output);
+        }
+
+        long start = System.nanoTime();
+        List<Path> files = collectFiles(source, target);
+        Semaphore openFiles = new Semaphore(maxOpenFiles);
+        List<Future<FileResult>> pending = new ArrayList<>(files.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                pending.add(executor.submit(() -> transformFile(source, target, file, cipher, openFiles)));
+            }
+        }
+
+        List<FileResult> results = new ArrayList<>(files.size());
+        try {
+            for (Future<FileResult> result : pending) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while translating " + input);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Translation failed", e.getCause());
+        }
+        return new Summary(List.copyOf(results), System.nanoTime() - start);
+    }
+
+    /**
+     * Walks the input tree, creating each directory in the output tree, and returns the
+     * regular files found.
+     */
+    private static List<Path> collectFiles(Path source, Path target) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(directory)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static FileResult transformFile(Path source, Path target, Path file, CaesarCipher cipher,
+                                            Semaphore openFiles) throws InterruptedException {
+        Path relative = source.relativize(file);
+        openFiles.acquire();
+        try {
+            long start = System.nanoTime();
+            long bytes = Files.size(file);
+            FileHandler.transformFileMapped(file, target.resolve(relative), cipher);
+            return new FileResult(relative, bytes, System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(relative, 0, 0, e.toString());
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes * 1e3 / nanos;
+    }
+}
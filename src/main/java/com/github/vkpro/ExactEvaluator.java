@@ -0,0 +1,494 @@
+package com.github.vkpro;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression tree in decimal arithmetic, so that results such as
+ * {@code 0.1+0.2} or {@code 2^62+1} come out exactly instead of rounded to a double.
+ * <p>
+ * Values are kept on a stack of primitive longs while they are whole numbers, and every
+ * operation on two longs uses the overflow-checked methods of {@link Math}. A value only
+ * becomes a {@link BigDecimal} when an operation overflows, divides unevenly or involves
+ * a literal with a fractional part, so integer arithmetic allocates nothing.
+ * <p>
+ * Exact values are limited to {@value #MAX_EXACT_DIGITS} digits and a scale of the same
+ * size. A value that would exceed the limit, or that has no finite decimal expansion, such
+ * as {@code 1/3} or {@code sqrt(2)}, is rounded to the {@link #WORKING} precision and marked
+ * as inexact; every operation on an inexact value is then carried out in that precision
+ * too, so its cost stays bounded. Powers with a non-integer exponent, or one beyond the
+ * int range, are computed as {@code exp(y * ln(x))} in extended precision and are inexact
+ * as well. An inexact result is rounded to the 34
+ * significant digits of {@link MathContext#DECIMAL128}, so the guard digits absorb the
+ * rounding errors of results such as {@code 1/3*3}, which comes out as {@code 1}.
+ * <p>
+ * Results that are not real numbers or too large to represent, which double arithmetic
+ * reports as {@code NaN} or infinity, throw a {@link NumericException}.
+ */
+final class ExactEvaluator {
+
+    /**
+     * Thrown for a result that is not a real number or cannot be represented, as opposed
+     * to a division by zero.
+     */
+    static final class NumericException extends ArithmeticException {
+        private static final long serialVersionUID = 1L;
+
+        NumericException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The precision of intermediate values that cannot be represented exactly, six guard
+     * digits beyond the {@link #RESULT} precision.
+     */
+    static final MathContext WORKING = new MathContext(40, RoundingMode.HALF_EVEN);
+
+    /**
+     * The precision of results that cannot be represented exactly.
+     */
+    static final MathContext RESULT = MathContext.DECIMAL128;
+
+    // Exact values are rounded once they have more digits, or a larger scale, than this
+    private static final int MAX_EXACT_DIGITS = 1000;
+
+    // The largest exponent BigDecimal.pow accepts, and the largest power of ten a result may have
+    private static final int MAX_EXPONENT = 999_999_999;
+
+    // Digits computed beyond the working precision by ln and exp
+    private static final int GUARD_DIGITS = 20;
+
+    // ln and exp reduce their argument until it is this close to 1 or 0
+    private static final BigDecimal REDUCED = new BigDecimal("0.001");
+
+    private ExactEvaluator() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Evaluates an expression tree built without constant folding from exact literals.
+     *
+     * @param root The root of the tree
+     * @return The exact result, or the result rounded to {@link #RESULT} if it could not be
+     *         represented exactly
+     * @throws IllegalArgumentException If the expression refers to variables
+     * @throws ArithmeticException If the expression divides by zero or its result is not a real number
+     */
+    static BigDecimal evaluate(ExpressionNode root) {
+        Stack values = new Stack();
+        ExpressionNode[] nodes = new ExpressionNode[16];
+        boolean[] expanded = new boolean[16];
+        nodes[0] = root;
+        int size = 1;
+        while (size > 0) {
+            ExpressionNode node = nodes[--size];
+            boolean operandsEvaluated = expanded[size];
+            if (size + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                expanded = Arrays.copyOf(expanded, nodes.length);
+            }
+            switch (node) {
+                case ExpressionNode.Literal literal -> {
+                    if (literal.decimal() == null) {
+                        values.push(literal.integer());
+                    } else {
+                        values.push(literal.decimal());
+                    }
+                }
+                case ExpressionNode.Constant constant -> values.push(decimal(constant.value()));
+                case ExpressionNode.Variable variable ->
+                    throw new IllegalArgumentException("Missing value for variable: " + variable.name());
+                case ExpressionNode.Unary unary -> {
+                    if (operandsEvaluated) {
+                        values.applyUnary(unary.opcode());
+                    } else {
+                        nodes[size] = unary;
+                        expanded[size++] = true;
+                        nodes[size] = unary.operand();
+                        expanded[size++] = false;
+                    }
+                }
+                case ExpressionNode.Binary binary -> {
+                    if (operandsEvaluated) {
+                        values.applyBinary(binary.opcode());
+                    } else {
+                        nodes[size] = binary;
+                        expanded[size++] = true;
+                        nodes[size] = binary.right();
+                        expanded[size++] = false;
+                        nodes[size] = binary.left();
+                        expanded[size++] = false;
+                    }
+                }
+            }
+        }
+        return values.top();
+    }
+
+    private static BigDecimal decimal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new NumericException("Result is not a real number");
+        }
+        return BigDecimal.valueOf(value);
+    }
+
+    /**
+     * Returns the natural logarithm of a positive number.
+     */
+    static BigDecimal ln(BigDecimal x, MathContext context) {
+        // x = m * 10^e with m in [1, 10)
+        int e = x.precision() - x.scale() - 1;
+        BigDecimal m = x.movePointLeft(e);
+        BigDecimal result = lnReduced(m, context);
+        if (e != 0) {
+            result = result.add(lnReduced(BigDecimal.TEN, context).multiply(BigDecimal.valueOf(e)), context);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the natural logarithm of a number between 1 and 10, taking square roots
+     * until the atanh series ln(m) = 2 * (u + u^3/3 + u^5/5 + ...) with u = (m-1)/(m+1)
+     * converges quickly.
+     */
+    private static BigDecimal lnReduced(BigDecimal m, MathContext context) {
+        MathContext inner = new MathContext(context.getPrecision() + 5, RoundingMode.HALF_EVEN);
+        int halvings = 0;
+        while (m.subtract(BigDecimal.ONE).abs().compareTo(REDUCED) > 0) {
+            m = m.sqrt(inner);
+            halvings++;
+        }
+        BigDecimal u = m.subtract(BigDecimal.ONE).divide(m.add(BigDecimal.ONE), inner);
+        BigDecimal square = u.multiply(u, inner);
+        BigDecimal term = u;
+        BigDecimal sum = u;
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(inner.getPrecision() + 2);
+        for (int i = 3; term.abs().compareTo(epsilon) > 0; i += 2) {
+            term = term.multiply(square, inner);
+            sum = sum.add(term.divide(BigDecimal.valueOf(i), inner), inner);
+        }
+        return sum.multiply(BigDecimal.valueOf(2).pow(halvings + 1), context);
+    }
+
+    /**
+     * Returns e raised to the given power, or zero if the result is too small to represent.
+     *
+     * @throws NumericException If the result is too large to represent
+     */
+    static BigDecimal exp(BigDecimal z, MathContext context) {
+        BigDecimal ln10 = lnReduced(BigDecimal.TEN, context);
+        // e^z = e^r * 10^k with r in [0, ln 10)
+        BigDecimal k = z.divide(ln10, context).setScale(0, RoundingMode.FLOOR);
+        if (k.compareTo(BigDecimal.valueOf(MAX_EXPONENT)) > 0) {
+            throw new NumericException("Result is too large to represent");
+        }
+        if (k.compareTo(BigDecimal.valueOf(-MAX_EXPONENT)) < 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal r = z.subtract(ln10.multiply(k), context);
+
+        // Taylor series on r / 2^halvings, then squared back
+        MathContext inner = new MathContext(context.getPrecision() + 5, RoundingMode.HALF_EVEN);
+        int halvings = 0;
+        while (r.compareTo(REDUCED) > 0) {
+            r = r.divide(BigDecimal.valueOf(2), inner);
+            halvings++;
+        }
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(inner.getPrecision() + 2);
+        for (int i = 1; term.abs().compareTo(epsilon) > 0; i++) {
+            term = term.multiply(r, inner).divide(BigDecimal.valueOf(i), inner);
+            sum = sum.add(term, inner);
+        }
+        for (int i = 0; i < halvings; i++) {
+            sum = sum.multiply(sum, inner);
+        }
+        return sum.round(context).scaleByPowerOfTen(k.intValue());
+    }
+
+    /**
+     * The operand stack. An entry is a long while its decimal is null, and a long is
+     * always exact.
+     */
+    private static final class Stack {
+        private long[] integers = new long[16];
+        private BigDecimal[] decimals = new BigDecimal[16];
+        private boolean[] inexact = new boolean[16];
+        private int size;
+
+        void push(long value) {
+            ensureCapacity();
+            decimals[size] = null;
+            inexact[size] = false;
+            integers[size++] = value;
+        }
+
+        void push(BigDecimal value) {
+            ensureCapacity();
+            set(size++, value, false);
+        }
+
+        BigDecimal top() {
+            if (decimals[0] == null) {
+                return BigDecimal.valueOf(integers[0]);
+            }
+            return inexact[0] ? decimals[0].round(RESULT) : decimals[0];
+        }
+
+        void applyUnary(int opcode) {
+            int i = size - 1;
+            // Only negating Long.MIN_VALUE or taking its absolute value overflows
+            if (decimals[i] == null && integers[i] != Long.MIN_VALUE) {
+                long a = integers[i];
+                switch (opcode) {
+                    case CompiledExpression.NEGATE -> integers[i] = -a;
+                    case CompiledExpression.ABS -> integers[i] = Math.abs(a);
+                    case CompiledExpression.SQRT -> {
+                        long root = integerSqrt(a);
+                        if (root < 0) {
+                            sqrt(i, BigDecimal.valueOf(a), false);
+                        } else {
+                            integers[i] = root;
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Not a unary instruction: " + opcode);
+                }
+                return;
+            }
+            BigDecimal a = operand(i);
+            switch (opcode) {
+                case CompiledExpression.NEGATE -> set(i, a.negate(), inexact[i]);
+                case CompiledExpression.ABS -> set(i, a.abs(), inexact[i]);
+                case CompiledExpression.SQRT -> sqrt(i, a, inexact[i]);
+                default -> throw new IllegalArgumentException("Not a unary instruction: " + opcode);
+            }
+        }
+
+        void applyBinary(int opcode) {
+            int i = --size - 1;
+            if (decimals[i] == null && decimals[size] == null) {
+                long a = integers[i];
+                long b = integers[size];
+                if (b == 0 && (opcode == CompiledExpression.DIVIDE || opcode == CompiledExpression.MODULO)) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                try {
+                    switch (opcode) {
+                        case CompiledExpression.ADD -> integers[i] = Math.addExact(a, b);
+                        case CompiledExpression.SUBTRACT -> integers[i] = Math.subtractExact(a, b);
+                        case CompiledExpression.MULTIPLY -> integers[i] = Math.multiplyExact(a, b);
+                        case CompiledExpression.DIVIDE -> {
+                            if (a % b != 0) {
+                                divide(i, BigDecimal.valueOf(a), BigDecimal.valueOf(b), false);
+                            } else {
+                                integers[i] = Math.divideExact(a, b);
+                            }
+                        }
+                        case CompiledExpression.MODULO -> integers[i] = a % b;
+                        case CompiledExpression.POWER -> {
+                            if (b < 0 || b > MAX_EXPONENT) {
+                                power(i, BigDecimal.valueOf(a), BigDecimal.valueOf(b), false);
+                            } else {
+                                integers[i] = integerPower(a, (int) b);
+                            }
+                        }
+                        case CompiledExpression.MIN -> integers[i] = Math.min(a, b);
+                        case CompiledExpression.MAX -> integers[i] = Math.max(a, b);
+                        default -> throw new IllegalArgumentException("Not a binary instruction: " + opcode);
+                    }
+                    return;
+                } catch (ArithmeticException e) {
+                    // Overflowed the long range; start over in decimal arithmetic
+                }
+            }
+            BigDecimal a = operand(i);
+            BigDecimal b = operand(size);
+            boolean rounded = inexact[i] || inexact[size];
+            switch (opcode) {
+                case CompiledExpression.ADD -> set(i, rounded ? a.add(b, WORKING) : a.add(b), rounded);
+                case CompiledExpression.SUBTRACT -> set(i, rounded ? a.subtract(b, WORKING) : a.subtract(b), rounded);
+                case CompiledExpression.MULTIPLY -> set(i, rounded ? a.multiply(b, WORKING) : a.multiply(b), rounded);
+                case CompiledExpression.DIVIDE -> divide(i, a, b, rounded);
+                case CompiledExpression.MODULO -> remainder(i, a, b, rounded);
+                case CompiledExpression.POWER -> power(i, a, b, rounded);
+                case CompiledExpression.MIN, CompiledExpression.MAX -> {
+                    boolean left = opcode == CompiledExpression.MIN ? a.compareTo(b) <= 0 : a.compareTo(b) >= 0;
+                    set(i, left ? a : b, left ? inexact[i] : inexact[size]);
+                }
+                default -> throw new IllegalArgumentException("Not a binary instruction: " + opcode);
+            }
+        }
+
+        /**
+         * Stores a decimal, rounding an exact value that exceeds the limits on its size.
+         */
+        private void set(int i, BigDecimal value, boolean rounded) {
+            if (!rounded && (value.precision() > MAX_EXACT_DIGITS || Math.abs(value.scale()) > MAX_EXACT_DIGITS)) {
+                value = value.round(WORKING);
+                rounded = true;
+            }
+            // Bounding the power of ten keeps the scale of any product or quotient within an int
+            long exponent = (long) value.precision() - value.scale() - 1;
+            if (exponent > MAX_EXPONENT && value.signum() != 0) {
+                throw new NumericException("Result is too large to represent");
+            }
+            if (exponent < -MAX_EXPONENT) {
+                value = BigDecimal.ZERO;
+            }
+            decimals[i] = value;
+            inexact[i] = rounded;
+        }
+
+        private void sqrt(int i, BigDecimal value, boolean rounded) {
+            if (value.signum() < 0) {
+                throw new NumericException("Square root of a negative number");
+            }
+            BigDecimal root = value.sqrt(WORKING);
+            set(i, root, rounded || root.multiply(root).compareTo(value) != 0);
+        }
+
+        private void divide(int i, BigDecimal a, BigDecimal b, boolean rounded) {
+            if (b.signum() == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            if (!rounded) {
+                try {
+                    set(i, a.divide(b), false);
+                    return;
+                } catch (ArithmeticException e) {
+                    // No finite decimal expansion
+                }
+            }
+            set(i, a.divide(b, WORKING), true);
+        }
+
+        private void remainder(int i, BigDecimal a, BigDecimal b, boolean rounded) {
+            if (b.signum() == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            if (!rounded) {
+                set(i, a.remainder(b), false);
+                return;
+            }
+            try {
+                set(i, a.remainder(b, WORKING), true);
+            } catch (ArithmeticException e) {
+                // The digits that decide the remainder were lost when the dividend was rounded
+                throw new NumericException("Remainder of a rounded value too large for its precision");
+            }
+        }
+
+        private void power(int i, BigDecimal base, BigDecimal exponent, boolean rounded) {
+            if (base.signum() == 0) {
+                if (exponent.signum() < 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                set(i, exponent.signum() == 0 ? BigDecimal.ONE : BigDecimal.ZERO, rounded);
+                return;
+            }
+            int n = integerExponent(exponent);
+            if (n == Integer.MIN_VALUE) {
+                // A fractional or huge exponent has no exact decimal result in general
+                set(i, generalPower(base, exponent), true);
+                return;
+            }
+            int magnitude = Math.abs(n);
+            if (!rounded && (long) Math.max(base.precision(), Math.abs(base.scale())) * magnitude <= MAX_EXACT_DIGITS) {
+                BigDecimal power = base.pow(magnitude);
+                if (n < 0) {
+                    divide(i, BigDecimal.ONE, power, false);
+                } else {
+                    set(i, power, false);
+                }
+                return;
+            }
+            try {
+                set(i, base.pow(n, WORKING), true);
+            } catch (ArithmeticException e) {
+                // The power of ten of the result overflowed
+                set(i, generalPower(base, BigDecimal.valueOf(n)), true);
+            }
+        }
+
+        private BigDecimal operand(int i) {
+            return decimals[i] != null ? decimals[i] : BigDecimal.valueOf(integers[i]);
+        }
+
+        private void ensureCapacity() {
+            if (size == integers.length) {
+                integers = Arrays.copyOf(integers, size * 2);
+                decimals = Arrays.copyOf(decimals, size * 2);
+                inexact = Arrays.copyOf(inexact, size * 2);
+            }
+        }
+    }
+
+    /**
+     * Computes base^exponent as exp(exponent * ln|base|) for a non-zero base, with enough
+     * digits that the product keeps the working precision after its integer part.
+     */
+    private static BigDecimal generalPower(BigDecimal base, BigDecimal exponent) {
+        boolean integral = exponent.signum() == 0 || exponent.stripTrailingZeros().scale() <= 0;
+        if (base.signum() < 0 && !integral) {
+            throw new NumericException("Result is not a real number");
+        }
+        int magnitude = Math.max(0, exponent.precision() - exponent.scale())
+            + Integer.toString(Math.abs(base.precision() - base.scale())).length() + 1;
+        MathContext context = new MathContext(WORKING.getPrecision() + GUARD_DIGITS + magnitude, RoundingMode.HALF_EVEN);
+        BigDecimal result = exp(exponent.multiply(ln(base.abs(), context), context), context).round(WORKING);
+        // A negative base keeps its sign for odd integer exponents
+        return base.signum() < 0 && exponent.toBigInteger().testBit(0) ? result.negate() : result;
+    }
+
+    /**
+     * Returns the square root of a long if it is a whole number, or -1 otherwise.
+     */
+    private static long integerSqrt(long value) {
+        if (value < 0) {
+            throw new NumericException("Square root of a negative number");
+        }
+        long root = (long) Math.sqrt((double) value);
+        // The double square root can be one off for values beyond 2^52
+        while (root * root > value) {
+            root--;
+        }
+        while ((root + 1) * (root + 1) <= value && root < 3_037_000_499L) {
+            root++;
+        }
+        return root * root == value ? root : -1;
+    }
+
+    private static long integerPower(long base, int exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = Math.multiplyExact(result, base);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = Math.multiplyExact(base, base);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exponent as an int within the range {@link BigDecimal#pow(int, MathContext)}
+     * accepts, or {@link Integer#MIN_VALUE} if it is fractional or out of range.
+     */
+    private static int integerExponent(BigDecimal exponent) {
+        if (exponent.signum() == 0) {
+            return 0;
+        }
+        BigDecimal stripped = exponent.stripTrailingZeros();
+        if (stripped.scale() > 0 || stripped.precision() - stripped.scale() > 10
+            || stripped.abs().compareTo(BigDecimal.valueOf(MAX_EXPONENT)) > 0) {
+            return Integer.MIN_VALUE;
+        }
+        return stripped.intValue();
+    }
+}
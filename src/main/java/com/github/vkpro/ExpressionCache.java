@@ -0,0 +1,205 @@
+package com.github.vkpro;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A size-bounded cache of compiled expressions keyed by their source string.
+ * <p>
+ * Entries are spread over independently locked segments, each of which evicts its least
+ * recently used entry when full, so threads only contend when they hit the same segment.
+ * Expressions that fail to compile are not cached.
+ * <p>
+ * The result of exact evaluation is kept in the same entry as the compiled form of its
+ * expression, so an expression counts once against the capacity whichever way it was
+ * looked up, and every lookup counts as one hit or miss. An exact expression has no
+ * variables, so its result is what compiling it with every constant folded produces;
+ * expressions whose evaluation fails are not cached.
+ */
+public final class ExpressionCache {
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most the given number of expressions.
+     *
+     * @param capacity The maximum number of cached expressions; 0 disables caching
+     * @throws IllegalArgumentException If the capacity is negative
+     */
+    public ExpressionCache(int capacity) {
+        this(capacity, DEFAULT_SEGMENTS);
+    }
+
+    ExpressionCache(int capacity, int segmentCount) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity cannot be negative: " + capacity);
+        }
+        // Small caches get fewer segments so that each one still holds a useful number of entries
+        int count = Integer.highestOneBit(Math.max(1, Math.min(segmentCount, capacity / 4)));
+        this.capacity = capacity;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Returns the compiled form of the expression, compiling and caching it on a miss.
+     *
+     * @param expression The mathematical expression to look up
+     * @return The compiled expression
+     * @throws IllegalArgumentException If the expression is null, empty, or has invalid format
+     */
+    public CompiledExpression getOrCompile(String expression) {
+        return get(expression, entry -> entry.compiled, (entry, value) -> entry.compiled = value,
+            ExpressionEvaluator::compile);
+    }
+
+    /**
+     * Returns the exact result of the expression, evaluating and caching it on a miss.
+     *
+     * @param expression The mathematical expression to look up
+     * @return The result of {@link ExpressionEvaluator#evaluateExact(String)}
+     * @throws IllegalArgumentException If the expression is null, empty, has invalid format
+     *                                  or refers to variables
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    BigDecimal getOrEvaluateExact(String expression) {
+        return get(expression, entry -> entry.exact, (entry, value) -> entry.exact = value,
+            ExpressionEvaluator::evaluateExactUncached);
+    }
+
+    /**
+     * Removes every cached expression. The counters are not reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached expressions.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of cached expressions.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to compile or evaluate the expression.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[capacity=" + capacity + ", size=" + size() + ", hits=" + hits()
+            + ", misses=" + misses() + ", evictions=" + evictions() + "]";
+    }
+
+    private <V> V get(String expression, Function<Entry, V> getter, BiConsumer<Entry, V> setter,
+                      Function<String, V> factory) {
+        if (expression == null || capacity == 0) {
+            misses.increment();
+            return factory.apply(expression);
+        }
+
+        Segment segment = segmentFor(expression);
+        V value;
+        synchronized (segment) {
+            Entry entry = segment.get(expression);
+            value = entry != null ? getter.apply(entry) : null;
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+
+        // Create outside the lock; a racing thread may create the same value, which is harmless
+        misses.increment();
+        value = factory.apply(expression);
+        synchronized (segment) {
+            Entry entry = segment.computeIfAbsent(expression, key -> new Entry());
+            if (getter.apply(entry) == null) {
+                setter.accept(entry, value);
+            }
+        }
+        return value;
+    }
+
+    private Segment segmentFor(String expression) {
+        int hash = expression.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * The cached forms of one expression, either of which may not have been created yet.
+     * Guarded by the lock of its segment.
+     */
+    private static final class Entry {
+        CompiledExpression compiled;
+        BigDecimal exact;
+    }
+
+    /**
+     * One independently locked part of the cache, kept in access order so that the eldest
+     * entry is the least recently used one.
+     */
+    private final class Segment extends LinkedHashMap<String, Entry> {
+        private final int segmentCapacity;
+
+        Segment(int segmentCapacity) {
+            super(16, 0.75f, true);
+            this.segmentCapacity = segmentCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,14 +1,43 @@
 package com.github.vkpro;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A utility class for evaluating mathematical expressions provided as strings.
- * Supports basic arithmetic operations (+, -, *, /), parentheses, and negative numbers.
+ * Supports the operators {@code + - * / %} and right-associative {@code ^}, unary minus,
+ * parentheses and the functions {@code sqrt}, {@code abs}, {@code min} and {@code max},
+ * the latter two with any number of arguments from two up.
+ * Expressions that are evaluated repeatedly can be compiled once with {@link #compile(String)};
+ * compiled expressions may also refer to named variables such as {@code price*(1-discount)}.
+ * {@link #evaluate(String)} keeps recently used expressions compiled in a bounded cache.
+ * Expressions too large or too deeply nested to compile are evaluated in a single streaming
+ * pass within {@link ExpressionLimits} by {@link #evaluate(Reader, ExpressionLimits)}.
+ * {@link #evaluateExact(String)} computes results in decimal instead of double arithmetic,
+ * and {@link #evaluateToString(String)} formats the result in the current {@link NumericMode}.
  */
 public class ExpressionEvaluator {
 
+    /**
+     * The arithmetic used for results shown to the user.
+     */
+    public enum NumericMode {
+        /**
+         * Exact arithmetic with {@link #evaluateExact(String)}: whole numbers as longs,
+         * escalating to decimals on overflow or for fractions.
+         */
+        EXACT,
+        /**
+         * Double arithmetic with {@link #evaluate(String)}, which is fastest for expressions
+         * evaluated many times.
+         */
+        DOUBLE
+    }
+
     /**
      * Private constructor to prevent instantiation of utility class.
      */
@@ -18,162 +47,672 @@ public class ExpressionEvaluator {
 
     private static final String INVALID_FORMAT_MESSAGE = "Invalid expression format: ";
 
+    private static final int DEFAULT_CACHE_CAPACITY = Integer.getInteger("vkpro.expression.cache.capacity", 1024);
+
+    private static volatile ExpressionCache cache = new ExpressionCache(DEFAULT_CACHE_CAPACITY);
+
+    private static volatile NumericMode numericMode =
+        "double".equalsIgnoreCase(System.getProperty("vkpro.expression.numeric"))
+            ? NumericMode.DOUBLE : NumericMode.EXACT;
+
+    // Results with more zeros than this between the digits and the point are shown in scientific notation
+    private static final int MAX_PLAIN_ZEROS = 20;
+
+    // Whole doubles below this magnitude are shown without a fractional part
+    private static final double MAX_PLAIN_DOUBLE = 1e15;
+
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Binding strength of each binary operator by character; 0 for anything else
+    private static final byte[] PRECEDENCE = new byte[128];
+
+    // Instruction of each binary operator by character
+    private static final byte[] OPCODES = new byte[128];
+
+    // Unary minus binds tighter than * and / but looser than ^, so -2^2 is -4
+    private static final int UNARY_PRECEDENCE = 3;
+
+    /**
+     * The deepest nesting of parentheses, unary minus and ^ that is compiled; the parser
+     * recurses once per level. {@link #evaluate(String)} evaluates deeper expressions as
+     * a stream instead.
+     */
+    static final int MAX_NESTING = 1000;
+
+    static {
+        defineOperator('+', 1, CompiledExpression.ADD);
+        defineOperator('-', 1, CompiledExpression.SUBTRACT);
+        defineOperator('*', 2, CompiledExpression.MULTIPLY);
+        defineOperator('/', 2, CompiledExpression.DIVIDE);
+        defineOperator('%', 2, CompiledExpression.MODULO);
+        defineOperator('^', 4, CompiledExpression.POWER);
+    }
+
+    private static final ThreadLocal<CompiledExpression.Builder> PROGRAM =
+        ThreadLocal.withInitial(CompiledExpression.Builder::new);
+
     /**
      * Evaluates a mathematical expression provided as a string.
      *
      * @param expression The mathematical expression to evaluate (e.g., "2+3*(4-1)")
      * @return The result of the evaluated expression
-     * @throws IllegalArgumentException If the expression is null, empty, or has invalid format
+     * @throws IllegalArgumentException If the expression is null, empty, has invalid format,
+     *                                  or refers to variables
      * @throws ArithmeticException If the expression contains division by zero
      */
     public static double evaluate(String expression) {
-        if (expression == null || expression.trim().isEmpty()) {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.EVALUATE);
+        try {
+            double result;
+            try {
+                result = cache.getOrCompile(expression).evaluate();
+            } catch (NestingTooDeepException e) {
+                // Too deep to compile, but not to evaluate in one streaming pass
+                result = evaluateStream(new StreamingEvaluator(expression, ExpressionLimits.DEFAULT));
+            }
+            sample.success(expression.length());
+            return result;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates a mathematical expression in exact decimal arithmetic. Whole numbers are
+     * computed as longs with overflow checks and only escalate to {@link BigDecimal} when
+     * they overflow, so {@code 2^63} and {@code 0.1+0.2} are exact. Results without a finite
+     * decimal expansion, such as {@code 1/3}, are rounded to 34 significant digits. Results
+     * are kept in the same bounded cache as compiled expressions, so evaluating an
+     * expression again only looks it up.
+     *
+     * @param expression The mathematical expression to evaluate (e.g., "0.1+0.2")
+     * @return The result of the evaluated expression
+     * @throws IllegalArgumentException If the expression is null, empty, has invalid format,
+     *                                  refers to variables or is nested more than
+     *                                  {@value #MAX_NESTING} levels deep
+     * @throws ArithmeticException If the expression contains division by zero or its result
+     *                             is not a real number, such as the square root of -1
+     */
+    public static BigDecimal evaluateExact(String expression) {
+        return evaluateExact(expression, false);
+    }
+
+    /**
+     * Evaluates a mathematical expression in the current {@link NumericMode} and formats the
+     * result for display. In exact mode, expressions too deeply nested to parse are
+     * evaluated as a stream in double arithmetic.
+     *
+     * @param expression The mathematical expression to evaluate
+     * @return The formatted result
+     * @throws IllegalArgumentException If the expression is null, empty, has invalid format,
+     *                                  or refers to variables
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    public static String evaluateToString(String expression) {
+        if (numericMode == NumericMode.EXACT) {
+            BigDecimal result = evaluateExact(expression, true);
+            if (result != null) {
+                return format(result);
+            }
+        }
+        return format(evaluate(expression));
+    }
+
+    /**
+     * Returns the arithmetic used by {@link #evaluateToString(String)}.
+     *
+     * @return The numeric mode
+     */
+    public static NumericMode numericMode() {
+        return numericMode;
+    }
+
+    /**
+     * Sets the arithmetic used by {@link #evaluateToString(String)}. The default of
+     * {@link NumericMode#EXACT} can be changed with the {@code vkpro.expression.numeric}
+     * system property set to {@code double}.
+     *
+     * @param mode The numeric mode
+     */
+    public static void setNumericMode(NumericMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Numeric mode cannot be null");
+        }
+        numericMode = mode;
+    }
+
+    /**
+     * Evaluates an expression in a single streaming pass without compiling it, for input
+     * that is too long or too deeply nested to hold as a program. Memory use grows with
+     * the nesting depth only. Errors are reported in the order they are read, so
+     * {@code 1/0/} fails with the division by zero rather than as an incomplete expression.
+     *
+     * @param expression The mathematical expression to evaluate
+     * @param limits     The bounds on length, nesting depth, operand count and literal length
+     * @return The result of the evaluated expression
+     * @throws IllegalArgumentException If the expression is empty, has invalid format,
+     *                                  refers to variables or exceeds a limit
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    public static double evaluate(CharSequence expression, ExpressionLimits limits) {
+        if (expression == null) {
             throw new IllegalArgumentException("Expression cannot be empty");
         }
-        
-        // Remove all spaces
-        expression = expression.replaceAll("\\s+", "");
-        
-        return evaluateExpression(expression);
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.EVALUATE);
+        try {
+            double result = evaluateStream(new StreamingEvaluator(expression, limits));
+            sample.success(expression.length());
+            return result;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates everything read from the reader as one expression in a single streaming
+     * pass, so the expression never has to fit in memory. The reader is not closed.
+     *
+     * @param reader The source of the expression
+     * @param limits The bounds on length, nesting depth, operand count and literal length
+     * @return The result of the evaluated expression
+     * @throws IOException If reading fails
+     * @throws IllegalArgumentException If the expression is empty, has invalid format,
+     *                                  refers to variables or exceeds a limit
+     * @throws ArithmeticException If the expression contains division by zero
+     */
+    public static double evaluate(Reader reader, ExpressionLimits limits) throws IOException {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.EVALUATE);
+        StreamingEvaluator evaluator = new StreamingEvaluator(reader, limits);
+        try {
+            double result = evaluator.evaluate();
+            sample.success(evaluator.consumed());
+            return result;
+        } catch (IOException | RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
     }
-    
-    private static double evaluateExpression(String expression) {
-        Deque<Double> values = new ArrayDeque<>();
-        Deque<Character> operators = new ArrayDeque<>();
+
+    /**
+     * Formats a result for display, without a fractional part when the result is a whole number.
+     *
+     * @param result The result of an evaluated expression
+     * @return The formatted result
+     */
+    public static String format(double result) {
+        // Whole numbers beyond 1e15 keep the exponent notation of Double.toString
+        if (result == Math.rint(result) && Math.abs(result) < MAX_PLAIN_DOUBLE) {
+            return String.valueOf((long) result);
+        }
+        return String.valueOf(result);
+    }
+
+    /**
+     * Formats an exact result for display, without trailing zeros in the fractional part.
+     * Results with long runs of zeros, such as {@code 10^50}, are shown in scientific notation.
+     *
+     * @param result The result of an exactly evaluated expression
+     * @return The formatted result
+     */
+    public static String format(BigDecimal result) {
+        if (result.signum() == 0) {
+            return "0";
+        }
+        BigDecimal stripped = result.stripTrailingZeros();
+        int leadingZeros = stripped.scale() - stripped.precision();
+        if (-stripped.scale() > MAX_PLAIN_ZEROS || leadingZeros > MAX_PLAIN_ZEROS) {
+            return stripped.toString();
+        }
+        return stripped.toPlainString();
+    }
+
+    /**
+     * Returns the cache of compiled expressions used by {@link #evaluate(String)}.
+     * Its default capacity of 1024 can be changed with the
+     * {@code vkpro.expression.cache.capacity} system property.
+     *
+     * @return The expression cache
+     */
+    public static ExpressionCache cache() {
+        return cache;
+    }
+
+    /**
+     * Replaces the expression cache with an empty one of the given capacity.
+     *
+     * @param capacity The maximum number of cached expressions; 0 disables caching
+     */
+    public static void setCacheCapacity(int capacity) {
+        cache = new ExpressionCache(capacity);
+    }
+
+    /**
+     * Returns how many times a compiled expression is interpreted before it is translated
+     * into bytecode.
+     *
+     * @return The compile threshold, or a negative number if expressions stay interpreted
+     */
+    public static int compileThreshold() {
+        return CompiledExpression.compileThreshold;
+    }
+
+    /**
+     * Sets how many times a compiled expression is interpreted before it is translated
+     * into bytecode. The default of 10000 can be changed with the
+     * {@code vkpro.expression.compileThreshold} system property.
+     *
+     * @param threshold The number of interpreted evaluations, or a negative number to
+     *                  keep expressions interpreted
+     */
+    public static void setCompileThreshold(int threshold) {
+        CompiledExpression.compileThreshold = threshold;
+    }
+
+    /**
+     * Parses a mathematical expression into a program that can be evaluated many times.
+     * Constant subexpressions are computed once here. Errors in the structure of the
+     * expression are reported here; division by zero is reported when the program is evaluated.
+     *
+     * @param expression The mathematical expression to compile (e.g., "2+3*(4-1)")
+     * @return The compiled expression
+     * @throws IllegalArgumentException If the expression is null, empty, or has invalid format
+     */
+    public static CompiledExpression compile(String expression) {
+        if (expression == null || isBlank(expression)) {
+            throw new IllegalArgumentException("Expression cannot be empty");
+        }
 
         // Basic validation for incomplete expressions
         validateExpression(expression);
 
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            
-            // If current character is a whitespace, skip it
-            if (Character.isWhitespace(c)) {
-                continue;
-            }
+        ExpressionNode tree = new Parser(expression, false).parse();
+        CompiledExpression.Builder program = PROGRAM.get();
+        program.reset();
+        ExpressionNode.emit(tree, program);
+        return program.build(expression);
+    }
 
-            if (isDigitOrNegativeNumber(c, i, expression)) {
-                i = processNumber(c, i, expression, values);
-            }
-            else if (c == '(') {
-                operators.push(c);
-            }
-            else if (c == ')') {
-                processClosingParenthesis(values, operators, expression);
-            }
-            else if (isOperator(c)) {
-                processOperator(c, values, operators, expression);
-            }
-            else {
-                throw new IllegalArgumentException("Invalid character in expression: " + c);
+    /**
+     * Evaluates an expression in exact arithmetic. If the expression is nested too deeply
+     * to parse and may be streamed instead, returns null without recording a failure.
+     */
+    private static BigDecimal evaluateExact(String expression, boolean streamable) {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.EVALUATE);
+        try {
+            BigDecimal result = cache.getOrEvaluateExact(expression);
+            sample.success(expression.length());
+            return result;
+        } catch (NestingTooDeepException e) {
+            if (streamable) {
+                return null;
             }
+            sample.failure(e);
+            throw e;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
         }
+    }
 
-        // Process all remaining operators
-        processRemainingOperators(values, operators, expression);
+    /**
+     * Parses and evaluates an expression in exact arithmetic, for {@link ExpressionCache}.
+     */
+    static BigDecimal evaluateExactUncached(String expression) {
+        if (expression == null || isBlank(expression)) {
+            throw new IllegalArgumentException("Expression cannot be empty");
+        }
+        validateExpression(expression);
+        return ExactEvaluator.evaluate(new Parser(expression, true).parse());
+    }
 
-        // The final result should be the only value in the stack
-        if (values.size() != 1 || !operators.isEmpty()) {
-            throw new IllegalArgumentException(INVALID_FORMAT_MESSAGE + expression);
+    private static double evaluateStream(StreamingEvaluator evaluator) {
+        try {
+            return evaluator.evaluate();
+        } catch (IOException e) {
+            // Character sequences are not read through an actual reader
+            throw new UncheckedIOException(e);
         }
-        return values.pop();
+    }
+
+    private static void defineOperator(char operator, int precedence, int opcode) {
+        PRECEDENCE[operator] = (byte) precedence;
+        OPCODES[operator] = (byte) opcode;
     }
 
     private static void validateExpression(String expression) {
-        if (expression.matches(".*[+\\-*/]\\s*$")) {
-            throw new IllegalArgumentException("Incomplete expression: " + expression);
+        int last = expression.length() - 1;
+        while (last >= 0 && isRemovableWhitespace(expression.charAt(last))) {
+            last--;
+        }
+        if (last >= 0 && (isOperator(expression.charAt(last)) || expression.charAt(last) == ',')) {
+            throw new IllegalArgumentException("Incomplete expression: " + stripWhitespace(expression));
         }
     }
 
-    private static boolean isDigitOrNegativeNumber(char c, int i, String expression) {
-        return Character.isDigit(c) || (c == '-' && (i == 0 || expression.charAt(i-1) == '('));
+    private static boolean isBlank(String expression) {
+        for (int i = 0; i < expression.length(); i++) {
+            if (expression.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the character is whitespace that is removed from the expression
+     * before it is interpreted, so that it may even appear inside a number.
+     */
+    private static boolean isRemovableWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static String stripWhitespace(String expression) {
+        StringBuilder stripped = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (!isRemovableWhitespace(c)) {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
+    }
+
+    private static boolean isVariableStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isVariablePart(char c) {
+        return isVariableStart(c) || (c >= '0' && c <= '9');
     }
 
     private static boolean isOperator(char c) {
-        return c == '+' || c == '-' || c == '*' || c == '/';
+        return c < PRECEDENCE.length && PRECEDENCE[c] != 0;
     }
 
-    private static int processNumber(char c, int i, String expression, Deque<Double> values) {
-        StringBuilder numBuilder = new StringBuilder();
+    /**
+     * A precedence-climbing parser that turns the expression into an {@link ExpressionNode}
+     * tree. Whitespace is skipped as it is scanned rather than removed up front, and error
+     * messages quote the expression with its whitespace removed.
+     */
+    private static final class Parser {
+        private final String expression;
+        private final boolean exactArithmetic;
+        private int position;
+        private int nesting;
+
+        /**
+         * Creates a parser. An exact parser keeps number literals exactly and does not
+         * fold constants, for evaluation by {@link ExactEvaluator}.
+         */
+        Parser(String expression, boolean exact) {
+            this.expression = expression;
+            this.exactArithmetic = exact;
+        }
 
-        // Handle negative numbers
-        if (c == '-') {
-            numBuilder.append(c);
-            i++;
-            if (i >= expression.length()) {
-                throw new IllegalArgumentException(INVALID_FORMAT_MESSAGE + expression);
+        ExpressionNode parse() {
+            ExpressionNode tree = parseExpression(0);
+            if (peek() == ')') {
+                throw mismatchedParentheses();
+            }
+            if (peek() != -1) {
+                throw unexpected((char) peek());
             }
+            return tree;
         }
 
-        // Get the complete number
-        while (i < expression.length() &&
-              (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
-            numBuilder.append(expression.charAt(i++));
+        /**
+         * Parses operands joined by binary operators that bind at least as tightly as
+         * {@code minPrecedence}.
+         */
+        private ExpressionNode parseExpression(int minPrecedence) {
+            enter();
+            ExpressionNode left = parseOperand();
+            while (true) {
+                int c = peek();
+                int precedence = c >= 0 && c < PRECEDENCE.length ? PRECEDENCE[c] : 0;
+                if (precedence == 0 || precedence < minPrecedence) {
+                    break;
+                }
+                position++;
+                // Operators are left-associative except ^, whose right operand may hold another ^
+                ExpressionNode right = parseExpression(c == '^' ? precedence : precedence + 1);
+                left = binary(OPCODES[c], left, right);
+            }
+            nesting--;
+            return left;
         }
-        i--; // Move back one position as the for loop will increment
 
-        values.push(Double.parseDouble(numBuilder.toString()));
-        return i;
-    }
+        private ExpressionNode parseOperand() {
+            int c = peek();
+            if (c == -1) {
+                throw invalidFormat();
+            }
+            if (c == '-') {
+                position++;
+                return unary(CompiledExpression.NEGATE, parseExpression(UNARY_PRECEDENCE));
+            }
+            if (c == '(') {
+                position++;
+                ExpressionNode inner = parseExpression(0);
+                expectClosingParenthesis();
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return exactArithmetic ? parseLiteral() : new ExpressionNode.Constant(parseNumber());
+            }
+            if (isVariableStart((char) c)) {
+                String name = parseName();
+                return peek() == '(' ? parseCall(name) : new ExpressionNode.Variable(name);
+            }
+            throw unexpected((char) c);
+        }
 
-    private static void processClosingParenthesis(Deque<Double> values, Deque<Character> operators, String expression) {
-        while (!operators.isEmpty() && operators.peek() != '(') {
-            if (values.size() < 2) {
-                throw new IllegalArgumentException(INVALID_FORMAT_MESSAGE + expression);
+        private ExpressionNode parseCall(String name) {
+            position++; // Skip the '('
+            List<ExpressionNode> arguments = new ArrayList<>();
+            arguments.add(parseExpression(0));
+            while (peek() == ',') {
+                position++;
+                arguments.add(parseExpression(0));
             }
-            values.push(applyOperation(operators.pop(), values.pop(), values.pop()));
+            expectClosingParenthesis();
+
+            return switch (name) {
+                case "sqrt" -> unary(CompiledExpression.SQRT, single(name, arguments));
+                case "abs" -> unary(CompiledExpression.ABS, single(name, arguments));
+                case "min" -> reduce(CompiledExpression.MIN, name, arguments);
+                case "max" -> reduce(CompiledExpression.MAX, name, arguments);
+                default -> throw new IllegalArgumentException("Unknown function: " + name);
+            };
         }
 
-        if (operators.isEmpty()) {
-            throw new IllegalArgumentException("Mismatched parentheses in expression: " + expression);
+        private static ExpressionNode single(String name, List<ExpressionNode> arguments) {
+            if (arguments.size() != 1) {
+                throw new IllegalArgumentException("Function " + name + " takes 1 argument but got " + arguments.size());
+            }
+            return arguments.get(0);
         }
-        operators.pop(); // Remove the '(' from stack
-    }
 
-    private static void processOperator(char c, Deque<Double> values, Deque<Character> operators, String expression) {
-        while (!operators.isEmpty() && hasPrecedence(c, operators.peek())) {
-            if (values.size() < 2) {
-                throw new IllegalArgumentException(INVALID_FORMAT_MESSAGE + expression);
+        private ExpressionNode reduce(int opcode, String name, List<ExpressionNode> arguments) {
+            if (arguments.size() < 2) {
+                throw new IllegalArgumentException("Function " + name + " takes at least 2 arguments but got "
+                    + arguments.size());
+            }
+            ExpressionNode result = arguments.get(0);
+            for (int i = 1; i < arguments.size(); i++) {
+                result = binary(opcode, result, arguments.get(i));
             }
-            values.push(applyOperation(operators.pop(), values.pop(), values.pop()));
+            return result;
         }
-        operators.push(c);
-    }
 
-    private static void processRemainingOperators(Deque<Double> values, Deque<Character> operators, String expression) {
-        while (!operators.isEmpty()) {
-            if (values.size() < 2) {
-                throw new IllegalArgumentException(INVALID_FORMAT_MESSAGE + expression);
+        /**
+         * Reads a number literal. Literals that fit in 53 bits with at most 22 fraction
+         * digits are converted directly, which gives the same correctly rounded result as
+         * {@link Double#parseDouble}; anything else, including malformed literals, is
+         * handed to {@code parseDouble}.
+         */
+        private double parseNumber() {
+            int start = position;
+            long mantissa = 0;
+            int significantDigits = 0;
+            int fractionDigits = 0;
+            boolean seenDigit = false;
+            boolean seenPoint = false;
+            boolean exact = true;
+            while (position < expression.length()) {
+                char d = expression.charAt(position);
+                if (d >= '0' && d <= '9') {
+                    seenDigit = true;
+                    if (mantissa != 0 || d != '0') {
+                        significantDigits++;
+                    }
+                    if (significantDigits > 15) {
+                        exact = false;
+                    }
+                    mantissa = mantissa * 10 + (d - '0');
+                    if (seenPoint) {
+                        fractionDigits++;
+                    }
+                } else if (d == '.') {
+                    exact &= !seenPoint;
+                    seenPoint = true;
+                } else if (Character.isDigit(d)) {
+                    exact = false; // A digit from another script, which parseDouble rejects
+                } else if (!isRemovableWhitespace(d)) {
+                    break;
+                }
+                position++;
             }
 
-            char operator = operators.pop();
-            if (operator == '(' || operator == ')') {
-                throw new IllegalArgumentException("Mismatched parentheses in expression: " + expression);
+            if (exact && seenDigit && fractionDigits < POWERS_OF_TEN.length) {
+                return mantissa / POWERS_OF_TEN[fractionDigits];
             }
+            return Double.parseDouble(stripWhitespace(expression.substring(start, position)));
+        }
 
-            values.push(applyOperation(operator, values.pop(), values.pop()));
+        /**
+         * Reads a number literal exactly. Whole numbers of at most 18 digits, which always
+         * fit in a long, are read directly; anything else is validated by
+         * {@link #parseNumber()} and kept as a decimal.
+         */
+        private ExpressionNode parseLiteral() {
+            int start = position;
+            long value = 0;
+            int digits = 0;
+            while (position < expression.length() && digits < 18) {
+                char d = expression.charAt(position);
+                if (d < '0' || d > '9') {
+                    break;
+                }
+                value = value * 10 + (d - '0');
+                digits++;
+                position++;
+            }
+            if (digits > 0 && (position == expression.length() || !continuesNumber(expression.charAt(position)))) {
+                return new ExpressionNode.Literal(value, null);
+            }
+            position = start;
+            parseNumber();
+            return new ExpressionNode.Literal(0, new BigDecimal(stripWhitespace(expression.substring(start, position))));
         }
-    }
-    
-    private static boolean hasPrecedence(char op1, char op2) {
-        if (op2 == '(' || op2 == ')') {
-            return false;
+
+        private static boolean continuesNumber(char c) {
+            return Character.isDigit(c) || c == '.' || isRemovableWhitespace(c);
         }
-        return (op1 != '*' && op1 != '/') || (op2 != '+' && op2 != '-');
-    }
-    
-    private static double applyOperation(char operator, double b, double a) {
-        return switch (operator) {
-            case '+' -> a + b;
-            case '-' -> a - b;
-            case '*' -> a * b;
-            case '/' -> {
-                if (b == 0) {
-                    throw new ArithmeticException("Division by zero");
+
+        private ExpressionNode unary(int opcode, ExpressionNode operand) {
+            return exactArithmetic ? new ExpressionNode.Unary(opcode, operand) : ExpressionNode.unary(opcode, operand);
+        }
+
+        private ExpressionNode binary(int opcode, ExpressionNode left, ExpressionNode right) {
+            return exactArithmetic ? new ExpressionNode.Binary(opcode, left, right)
+                : ExpressionNode.binary(opcode, left, right);
+        }
+
+        private String parseName() {
+            int start = position;
+            boolean hasWhitespace = false;
+            while (position < expression.length()) {
+                char c = expression.charAt(position);
+                if (isRemovableWhitespace(c)) {
+                    hasWhitespace = true;
+                } else if (!isVariablePart(c)) {
+                    break;
                 }
-                yield a / b;
+                position++;
             }
-            default -> 0;
-        };
+            String name = expression.substring(start, position);
+            return hasWhitespace ? stripWhitespace(name) : name;
+        }
+
+        private void expectClosingParenthesis() {
+            int c = peek();
+            if (c == -1) {
+                throw mismatchedParentheses();
+            }
+            if (c != ')') {
+                throw unexpected((char) c);
+            }
+            position++;
+        }
+
+        /**
+         * Returns the next character that is not whitespace without consuming it, or -1 at
+         * the end of the expression. Whitespace other than the removable kind still ends a
+         * number or name.
+         */
+        private int peek() {
+            while (position < expression.length()) {
+                char c = expression.charAt(position);
+                if (!Character.isWhitespace(c)) {
+                    return c;
+                }
+                position++;
+            }
+            return -1;
+        }
+
+        private void enter() {
+            if (++nesting > MAX_NESTING) {
+                throw new NestingTooDeepException();
+            }
+        }
+
+        /**
+         * Reports a character that cannot appear where it was found, distinguishing
+         * characters that are never valid.
+         */
+        private IllegalArgumentException unexpected(char c) {
+            if (isOperator(c) || isVariablePart(c) || c == '(' || c == ')' || c == ',' || c == '.') {
+                return invalidFormat();
+            }
+            return new IllegalArgumentException("Invalid character in expression: " + c);
+        }
+
+        private IllegalArgumentException invalidFormat() {
+            return new IllegalArgumentException(INVALID_FORMAT_MESSAGE + stripWhitespace(expression));
+        }
+
+        private IllegalArgumentException mismatchedParentheses() {
+            return new IllegalArgumentException("Mismatched parentheses in expression: " + stripWhitespace(expression));
+        }
+    }
+
+    /**
+     * Thrown by {@link #compile(String)} for expressions nested more deeply than
+     * {@link #MAX_NESTING}, which {@link #evaluate(String)} then evaluates as a stream.
+     */
+    private static final class NestingTooDeepException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        NestingTooDeepException() {
+            super("Expression is nested more than " + MAX_NESTING + " levels deep");
+        }
     }
-}
\ No newline at end of file
+}
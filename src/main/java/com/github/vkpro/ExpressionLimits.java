@@ -0,0 +1,48 @@
+package com.github.vkpro;
+
+/**
+ * Bounds applied when an expression is evaluated as a stream, so that a malformed or
+ * hostile input fails with a clear error instead of exhausting the heap.
+ *
+ * @param maxLength        The maximum number of characters read
+ * @param maxDepth         The maximum number of operators and parentheses waiting for their
+ *                         operands at any one time, which bounds the memory used
+ * @param maxOperands      The maximum number of numbers in the expression
+ * @param maxLiteralLength The maximum number of characters in one number literal, which
+ *                         bounds the memory used to read it
+ */
+public record ExpressionLimits(long maxLength, int maxDepth, long maxOperands, int maxLiteralLength) {
+
+    /**
+     * The longest number literal accepted by default, far more digits than a double holds.
+     */
+    public static final int DEFAULT_MAX_LITERAL_LENGTH = 4096;
+
+    /**
+     * Limits that accept any length and operand count, nesting up to a million levels,
+     * which keeps the evaluation stacks below about 16 MB, and literals of up to
+     * {@value #DEFAULT_MAX_LITERAL_LENGTH} characters.
+     */
+    public static final ExpressionLimits DEFAULT = new ExpressionLimits(Long.MAX_VALUE, 1_000_000, Long.MAX_VALUE);
+
+    /**
+     * Validates the limits.
+     *
+     * @throws IllegalArgumentException If a limit is not positive
+     */
+    public ExpressionLimits {
+        if (maxLength < 1 || maxDepth < 1 || maxOperands < 1 || maxLiteralLength < 1) {
+            throw new IllegalArgumentException("Expression limits must be positive");
+        }
+    }
+
+    /**
+     * Creates limits that accept number literals of up to
+     * {@value #DEFAULT_MAX_LITERAL_LENGTH} characters.
+     *
+     * @throws IllegalArgumentException If a limit is not positive
+     */
+    public ExpressionLimits(long maxLength, int maxDepth, long maxOperands) {
+        this(maxLength, maxDepth, maxOperands, DEFAULT_MAX_LITERAL_LENGTH);
+    }
+}
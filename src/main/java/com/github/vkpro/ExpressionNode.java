@@ -0,0 +1,120 @@
+package com.github.vkpro;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * A node of the syntax tree built by {@link ExpressionEvaluator#compile(String)}.
+ * <p>
+ * Nodes are created through {@link #unary(int, ExpressionNode)} and
+ * {@link #binary(int, ExpressionNode, ExpressionNode)}, which fold an operation whose
+ * operands are all constants into a single constant. Since every node is built after its
+ * operands, this is a bottom-up optimizer pass over the whole tree, and an expression made
+ * of literals only ends up as one constant. A division or remainder by a constant zero is
+ * never folded, so that the error is still reported when the expression is evaluated.
+ * Operators use the instruction codes of {@link CompiledExpression}.
+ * <p>
+ * Trees for {@link ExactEvaluator} are built without folding and hold their numbers as
+ * {@link Literal} nodes, so that no value is rounded to a double.
+ */
+sealed interface ExpressionNode {
+
+    /**
+     * A number literal or folded subexpression.
+     */
+    record Constant(double value) implements ExpressionNode {
+    }
+
+    /**
+     * A number literal kept exactly: an integer that fits in a long, or else a decimal.
+     */
+    record Literal(long integer, BigDecimal decimal) implements ExpressionNode {
+    }
+
+    /**
+     * A reference to a named variable.
+     */
+    record Variable(String name) implements ExpressionNode {
+    }
+
+    /**
+     * An operator or function with one operand.
+     */
+    record Unary(int opcode, ExpressionNode operand) implements ExpressionNode {
+    }
+
+    /**
+     * An operator or function with two operands.
+     */
+    record Binary(int opcode, ExpressionNode left, ExpressionNode right) implements ExpressionNode {
+    }
+
+    /**
+     * Creates a unary node, or a constant if the operand is constant.
+     */
+    static ExpressionNode unary(int opcode, ExpressionNode operand) {
+        if (operand instanceof Constant constant) {
+            return new Constant(CompiledExpression.apply(opcode, constant.value()));
+        }
+        return new Unary(opcode, operand);
+    }
+
+    /**
+     * Creates a binary node, or a constant if both operands are constant and the operation
+     * cannot fail.
+     */
+    static ExpressionNode binary(int opcode, ExpressionNode left, ExpressionNode right) {
+        if (left instanceof Constant a && right instanceof Constant b
+            && !(b.value() == 0 && (opcode == CompiledExpression.DIVIDE || opcode == CompiledExpression.MODULO))) {
+            return new Constant(CompiledExpression.apply(opcode, a.value(), b.value()));
+        }
+        return new Binary(opcode, left, right);
+    }
+
+    /**
+     * Appends the postfix program of the tree to the builder. The tree is walked with an
+     * explicit stack, so long chains such as {@code 1+2+...} do not recurse.
+     */
+    static void emit(ExpressionNode root, CompiledExpression.Builder program) {
+        ExpressionNode[] nodes = new ExpressionNode[16];
+        boolean[] expanded = new boolean[16];
+        nodes[0] = root;
+        int size = 1;
+        while (size > 0) {
+            ExpressionNode node = nodes[--size];
+            boolean operandsEmitted = expanded[size];
+            if (size + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                expanded = Arrays.copyOf(expanded, nodes.length);
+            }
+            switch (node) {
+                case Constant constant -> program.pushConstant(constant.value());
+                case Literal literal -> program.pushConstant(
+                    literal.decimal() == null ? literal.integer() : literal.decimal().doubleValue());
+                case Variable variable -> program.loadVariable(variable.name());
+                case Unary unary -> {
+                    if (operandsEmitted) {
+                        program.applyUnary(unary.opcode());
+                    } else {
+                        nodes[size] = unary;
+                        expanded[size++] = true;
+                        nodes[size] = unary.operand();
+                        expanded[size++] = false;
+                    }
+                }
+                case Binary binary -> {
+                    if (operandsEmitted) {
+                        program.applyBinary(binary.opcode());
+                    } else {
+                        nodes[size] = binary;
+                        expanded[size++] = true;
+                        nodes[size] = binary.right();
+                        expanded[size++] = false;
+                        nodes[size] = binary.left();
+                        expanded[size++] = false;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.vkpro;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translates a growing file, such as an application log, into an output file by
+ * processing only the bytes appended since the previous pass.
+ * <p>
+ * Progress is kept in a checkpoint file: the input offset, the bytes of a UTF-8 sequence
+ * that was cut off at the end of the input, the length of the output and the identity of
+ * the input file. The checkpoint is replaced atomically after the output has been forced
+ * to disk, so a follower opened after a crash or restart truncates any output written
+ * after the last checkpoint and continues from there, without translating a byte twice.
+ * <p>
+ * A file replaced under the same name, as log rotation does, is detected by its file key.
+ * While the follower is running it still holds the old file open, so the old file's last
+ * bytes are translated before it switches to the new file; if the rotation happened while
+ * no follower was running, the new file is translated from its beginning. An input that
+ * became shorter than the offset was truncated in place and is also translated from its
+ * beginning. The output is only ever appended to.
+ */
+public final class FileFollower implements Closeable {
+    // Size of the chunks the input is read in
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // A long catch-up pass saves its progress after this many input bytes
+    private static final long CHECKPOINT_INTERVAL = 64L * 1024 * 1024;
+
+    // The longest UTF-8 sequence that can be incomplete at the end of the input
+    private static final int MAX_PENDING = 3;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path input;
+    private final Path checkpoint;
+    private final CaesarCipher cipher;
+    private final FileChannel target;
+    private final ByteBuffer source = ByteBuffer.allocate(MAX_PENDING + CHUNK_SIZE);
+    private final ByteBuffer translated = ByteBuffer.allocate(MAX_PENDING + CHUNK_SIZE);
+
+    private FileChannel current;
+    private String fileKey;
+    private long offset;
+    private byte[] pending = new byte[0];
+    private long outputLength;
+    private long savedOffset;
+    private boolean dirty;
+    private boolean closed;
+    private WatchService watcher;
+
+    private FileFollower(Path input, Path checkpoint, CaesarCipher cipher, FileChannel target) {
+        this.input = input;
+        this.checkpoint = checkpoint;
+        this.cipher = cipher;
+        this.target = target;
+    }
+
+    /**
+     * Opens a follower, resuming from the checkpoint if it exists.
+     *
+     * @param input      The file to follow; it does not need to exist yet
+     * @param output     The file receiving the translation
+     * @param checkpoint The file recording the progress
+     * @param cipher     The cipher to apply
+     * @return The follower, which has not read any input yet
+     * @throws IOException If the checkpoint cannot be read or the output cannot be opened
+     */
+    public static FileFollower open(Path input, Path output, Path checkpoint, CaesarCipher cipher) throws IOException {
+        if (Files.exists(input) && Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("The output must not be the followed file: " + output);
+        }
+        FileChannel target = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            FileFollower follower = new FileFollower(input, checkpoint, cipher, target);
+            follower.restore();
+            return follower;
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the offset of the next input byte to read.
+     *
+     * @return The offset in the current input file
+     */
+    public synchronized long offset() {
+        return offset;
+    }
+
+    /**
+     * Translates everything appended to the input since the previous pass and saves the
+     * checkpoint. Does nothing if the input does not exist or the follower is closed.
+     *
+     * @return The number of input bytes read
+     * @throws IOException If the input is not valid UTF-8 or a file cannot be read or written
+     */
+    public synchronized long poll() throws IOException {
+        if (closed) {
+            return 0;
+        }
+        long read = 0;
+        BasicFileAttributes attributes = attributes();
+        if (current != null && (attributes == null || !fileKey(attributes).equals(fileKey))) {
+            // Rotated: finish the old file through the channel that still refers to it
+            read += drain(current.size());
+            flushPending();
+            current.close();
+            current = null;
+            reset(attributes == null ? null : fileKey(attributes));
+        }
+        if (attributes != null) {
+            if (current == null) {
+                current = FileChannel.open(input, StandardOpenOption.READ);
+                String key = fileKey(attributes);
+                if (fileKey != null && !fileKey.equals(key)) {
+                    // Rotated while no follower was running
+                    reset(key);
+                }
+                fileKey = key;
+            }
+            long size = current.size();
+            if (size < offset) {
+                // Truncated in place
+                reset(fileKey);
+            }
+            Metrics.Sample sample = size > offset ? Metrics.start(Metrics.Operation.FILE_TRANSFORM) : Metrics.Sample.DISABLED;
+            try {
+                long appended = drain(size);
+                sample.success(appended);
+                read += appended;
+            } catch (IOException | RuntimeException e) {
+                sample.failure(e);
+                throw e;
+            }
+        }
+        if (dirty) {
+            save();
+        }
+        return read;
+    }
+
+    /**
+     * Keeps translating the input as it grows until the follower is closed. Changes in the
+     * input's directory are picked up as they happen; the interval bounds the delay on file
+     * systems that do not report changes.
+     *
+     * @param interval The longest time between two passes
+     * @throws IOException          If a pass fails
+     * @throws InterruptedException If the thread is interrupted while waiting for changes
+     */
+    public void follow(Duration interval) throws IOException, InterruptedException {
+        Path directory = input.toAbsolutePath().getParent();
+        try (WatchService service = directory.getFileSystem().newWatchService()) {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                watcher = service;
+            }
+            while (!isClosed()) {
+                poll();
+                WatchKey key = service.poll(interval.toNanos(), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting for changes
+        }
+    }
+
+    /**
+     * Stops following, waiting for a pass in progress to finish. Every translated byte is
+     * covered by the saved checkpoint.
+     *
+     * @throws IOException If a file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (watcher != null) {
+                // Wakes up follow()
+                watcher.close();
+            }
+            if (current != null) {
+                current.close();
+            }
+        } finally {
+            target.close();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Translates the current input from the offset up to the given size.
+     *
+     * @return The number of input bytes read
+     */
+    private long drain(long size) throws IOException {
+        long start = offset;
+        while (offset < size) {
+            source.clear();
+            source.put(pending);
+            source.limit((int) Math.min(source.capacity(), pending.length + size - offset));
+            int count = current.read(source, offset);
+            if (count <= 0) {
+                break;
+            }
+            source.flip();
+            translate();
+            // Only move past the chunk once it has been translated, so a failed pass leaves the
+            // offset and pending bytes as they were and the next pass fails the same way
+            offset += count;
+            pending = new byte[source.remaining()];
+            source.get(pending);
+            dirty = true;
+            if (offset - savedOffset >= CHECKPOINT_INTERVAL) {
+                save();
+            }
+        }
+        return offset - start;
+    }
+
+    /**
+     * Translates the complete UTF-8 sequences in the source buffer and appends them to the
+     * output, leaving an incomplete sequence at the end of the buffer unconsumed.
+     */
+    private void translate() throws IOException {
+        append(cipher.applyUtf8Decoding(source, translated, false));
+    }
+
+    /**
+     * Copies the bytes of a sequence left incomplete at the end of a rotated file to the
+     * output unchanged, since no more bytes of it will follow.
+     */
+    private void flushPending() throws IOException {
+        if (pending.length > 0) {
+            append(ByteBuffer.wrap(pending));
+            pending = new byte[0];
+        }
+    }
+
+    private void append(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            outputLength += target.write(bytes, outputLength);
+        }
+    }
+
+    private void reset(String key) {
+        fileKey = key;
+        offset = 0;
+        savedOffset = 0;
+        pending = new byte[0];
+        dirty = true;
+    }
+
+    private BasicFileAttributes attributes() throws IOException {
+        try {
+            return Files.readAttributes(input, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        // Without file keys only truncation can be detected
+        Object key = attributes.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    private void restore() throws IOException {
+        if (Files.exists(checkpoint)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            try {
+                offset = Long.parseLong(properties.getProperty("offset", "0"));
+                pending = HEX.parseHex(properties.getProperty("pending", ""));
+                outputLength = Long.parseLong(properties.getProperty("output", "0"));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid checkpoint " + checkpoint + ": " + e.getMessage(), e);
+            }
+            fileKey = properties.getProperty("file");
+            savedOffset = offset;
+        }
+        long length = target.size();
+        if (length < outputLength) {
+            // Without the output, the translation has to start over
+            reset(fileKey);
+            outputLength = 0;
+        }
+        // Drop whatever was written after the checkpoint was saved
+        target.truncate(outputLength);
+    }
+
+    private void save() throws IOException {
+        target.force(false);
+        Properties properties = new Properties();
+        properties.setProperty("offset", Long.toString(offset));
+        properties.setProperty("pending", HEX.formatHex(pending));
+        properties.setProperty("output", Long.toString(outputLength));
+        if (fileKey != null) {
+            properties.setProperty("file", fileKey);
+        }
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, "FileFollower checkpoint");
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        savedOffset = offset;
+        dirty = false;
+    }
+}
@@ -1,20 +1,458 @@
 package com.github.vkpro;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 public class FileHandler {
+
+    // Size of each mapped window; mappings are limited to 2 GB and smaller windows keep address space use modest
+    private static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    // Files smaller than this are not worth splitting across threads
+    private static final long PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+    // Size of the region each fork-join task maps and translates
+    private static final int PARALLEL_REGION_SIZE = 1024 * 1024;
+
+    // Number and size of the buffers cycled through by the asynchronous pipeline
+    private static final int ASYNC_BUFFER_COUNT = 3;
+    private static final int ASYNC_BUFFER_SIZE = 1024 * 1024;
+
+    // Room in front of each asynchronous buffer for the incomplete UTF-8 sequence carried over from the previous one
+    private static final int CARRY_SIZE = 3;
     
     public static String readFromFile(String filePath) throws IOException {
-        Path path = Paths.get(filePath);
-        return Files.readString(path, StandardCharsets.UTF_8);
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.FILE_READ);
+        try {
+            Path path = Paths.get(filePath);
+            String content = Files.readString(path, StandardCharsets.UTF_8);
+            sample.success(content.length());
+            return content;
+        } catch (IOException | RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
     }
     
     public static void writeToFile(String filePath, String content) throws IOException {
-        Path path = Paths.get(filePath);
-        Files.writeString(path, content, StandardCharsets.UTF_8);
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.FILE_WRITE);
+        try {
+            Path path = Paths.get(filePath);
+            Files.writeString(path, content, StandardCharsets.UTF_8);
+            sample.success(content.length());
+        } catch (IOException | RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    public static void encryptFile(Path input, Path output, int shift) throws IOException {
+        transformFileMapped(input, output, CaesarCipher.forShift(shift));
+    }
+
+    public static void decryptFile(Path input, Path output, int shift) throws IOException {
+        transformFileMapped(input, output, CaesarCipher.forShift(-shift));
+    }
+
+    /**
+     * Streams a UTF-8 file through the cipher in fixed-size chunks, so memory use does not
+     * depend on the file size. Multibyte sequences split across chunk boundaries are
+     * reassembled by the decoder before translation.
+     */
+    public static void transformFile(Path input, Path output, CaesarCipher cipher) throws IOException {
+        measure(input, output, target -> stream(input, target, cipher));
+    }
+
+    private static void stream(Path input, Path output, CaesarCipher cipher) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            cipher.apply(reader, writer);
+        }
+    }
+
+    /**
+     * Memory-maps the file and translates its UTF-8 bytes directly into a mapped output,
+     * without decoding to characters. Produces the same output as {@link #transformFile};
+     * input that cannot be translated byte by byte, such as malformed UTF-8, is handed to
+     * that method instead, so errors are reported the same way.
+     */
+    public static void transformFileMapped(Path input, Path output, CaesarCipher cipher) throws IOException {
+        transformFileMapped(input, output, cipher, MAPPED_REGION_SIZE);
+    }
+
+    static void transformFileMapped(Path input, Path output, CaesarCipher cipher, int regionSize) throws IOException {
+        measure(input, output, target -> mapped(input, target, cipher, regionSize));
+    }
+
+    private static void mapped(Path input, Path output, CaesarCipher cipher, int regionSize) throws IOException {
+        boolean translated;
+        try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            translated = transformMapped(source, target, cipher, regionSize);
+        }
+        if (!translated) {
+            stream(input, output, cipher);
+        }
+    }
+
+    /**
+     * Encrypts the file into a {@link ChunkedFile}, from which ranges of characters or lines
+     * can later be decrypted without decrypting the rest of the file.
+     */
+    public static void transformFileChunked(Path input, Path output, CaesarCipher cipher) throws IOException {
+        measure(input, output, target -> ChunkedFile.write(input, target, cipher, ChunkedFile.DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * Translates the file like {@link #transformFileMapped}, splitting it into regions that
+     * are mapped and translated concurrently on the common fork-join pool.
+     */
+    public static void transformFileParallel(Path input, Path output, CaesarCipher cipher) throws IOException {
+        transformFileParallel(input, output, cipher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Translates the file like {@link #transformFileMapped}, splitting it into regions that
+     * are mapped and translated concurrently on the given pool. Every region is written at
+     * the same offset it was read from, so regions can complete in any order. Small files
+     * and single-threaded pools take the sequential path.
+     */
+    public static void transformFileParallel(Path input, Path output, CaesarCipher cipher,
+                                             ForkJoinPool pool) throws IOException {
+        transformFileParallel(input, output, cipher, pool, PARALLEL_THRESHOLD, PARALLEL_REGION_SIZE);
+    }
+
+    static void transformFileParallel(Path input, Path output, CaesarCipher cipher, ForkJoinPool pool,
+                                      long threshold, int regionSize) throws IOException {
+        measure(input, output, target -> parallel(input, target, cipher, pool, threshold, regionSize));
+    }
+
+    private static void parallel(Path input, Path output, CaesarCipher cipher, ForkJoinPool pool,
+                                 long threshold, int regionSize) throws IOException {
+        long size = Files.size(input);
+        if (size == 0 || size < threshold || pool.getParallelism() == 1) {
+            mapped(input, output, cipher, MAPPED_REGION_SIZE);
+            return;
+        }
+        boolean translated;
+        try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long[] boundaries = regionBoundaries(source, size, regionSize);
+            if (boundaries == null) {
+                translated = false;
+            } else {
+                // Size the output up front so that concurrent mappings never have to grow it
+                target.write(ByteBuffer.allocate(1), size - 1);
+                translated = pool.invoke(new RegionTask(source, target, cipher, boundaries, 0, boundaries.length - 1));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!translated) {
+            stream(input, output, cipher);
+        }
+    }
+
+    /**
+     * Translates the file like {@link #transformFileMapped}, overlapping the disk and the CPU:
+     * while one buffer is translated on the calling thread, the next one is being read and
+     * the previous one written by asynchronous file channels. Memory use is bounded by a
+     * fixed number of buffers whatever the file size.
+     */
+    public static void transformFileAsync(Path input, Path output, CaesarCipher cipher) throws IOException {
+        transformFileAsync(input, output, cipher, ASYNC_BUFFER_COUNT, ASYNC_BUFFER_SIZE);
+    }
+
+    static void transformFileAsync(Path input, Path output, CaesarCipher cipher, int bufferCount,
+                                   int bufferSize) throws IOException {
+        if (bufferCount < 2) {
+            throw new IllegalArgumentException("The pipeline needs at least two buffers: " + bufferCount);
+        }
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("Buffers must hold a whole UTF-8 sequence: " + bufferSize);
+        }
+        measure(input, output, target -> async(input, target, cipher, bufferCount, bufferSize));
+    }
+
+    private static void async(Path input, Path output, CaesarCipher cipher, int bufferCount,
+                              int bufferSize) throws IOException {
+        boolean translated;
+        try (AsynchronousFileChannel source = AsynchronousFileChannel.open(input, StandardOpenOption.READ);
+             AsynchronousFileChannel target = AsynchronousFileChannel.open(output, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            translated = transformAsync(source, target, cipher, bufferCount, bufferSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while translating " + input);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Asynchronous file operation failed", e.getCause());
+        }
+        if (!translated) {
+            stream(input, output, cipher);
+        }
+    }
+
+    /**
+     * Runs the read, translate and write stages over a ring of buffers. Chunk {@code c} is
+     * read into buffer {@code c % n}; the buffer is reused for chunk {@code c + n} once the
+     * write of chunk {@code c} has completed, so {@code n - 1} reads and one write can be
+     * in flight while a chunk is translated.
+     */
+    private static boolean transformAsync(AsynchronousFileChannel source, AsynchronousFileChannel target,
+                                          CaesarCipher cipher, int bufferCount, int bufferSize)
+        throws IOException, InterruptedException, ExecutionException {
+        long size = source.size();
+        long chunks = (size + bufferSize - 1) / bufferSize;
+        AsyncBuffer[] buffers = new AsyncBuffer[(int) Math.min(bufferCount, Math.max(chunks, 1))];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new AsyncBuffer(bufferSize);
+        }
+        for (long chunk = 0; chunk < Math.min(buffers.length - 1, chunks); chunk++) {
+            buffers[(int) chunk].startRead(source, chunk * bufferSize, size);
+        }
+
+        byte[] carry = new byte[CARRY_SIZE];
+        int carryLength = 0;
+        try {
+            for (long chunk = 0; chunk < chunks; chunk++) {
+                AsyncBuffer current = buffers[(int) (chunk % buffers.length)];
+                if (current.read == null) {
+                    // Only happens with a single buffer, when the file is one chunk long
+                    current.startRead(source, chunk * bufferSize, size);
+                }
+                current.awaitRead(source);
+
+                // Put the incomplete sequence left over from the previous chunk in front of this one
+                int start = CARRY_SIZE - carryLength;
+                current.buffer.put(start, carry, 0, carryLength);
+                ByteBuffer in = current.buffer.duplicate().position(start);
+                ByteBuffer out = current.buffer.duplicate().position(start);
+                int consumed = cipher.applyUtf8(in, out, chunk == chunks - 1);
+                if (consumed < 0) {
+                    return false;
+                }
+                long writePosition = chunk * bufferSize - carryLength;
+                carryLength = in.remaining();
+                in.get(carry, 0, carryLength);
+                current.startWrite(target, start, consumed, writePosition);
+
+                long next = chunk + buffers.length - 1;
+                if (next < chunks && next > chunk) {
+                    AsyncBuffer following = buffers[(int) (next % buffers.length)];
+                    following.awaitWrite(target);
+                    following.startRead(source, next * bufferSize, size);
+                }
+            }
+        } finally {
+            // Never leave a write running when the channels are closed or the output is rewritten
+            for (AsyncBuffer buffer : buffers) {
+                buffer.awaitWrite(target);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the file into regions of roughly the given size. Each boundary is moved forward
+     * past UTF-8 continuation bytes so that no multibyte sequence straddles two regions.
+     *
+     * @return The region start offsets followed by the file size, or null if the file
+     *         cannot be valid UTF-8
+     */
+    private static long[] regionBoundaries(FileChannel source, long size, int regionSize) throws IOException {
+        int regions = (int) ((size + regionSize - 1) / regionSize);
+        long[] boundaries = new long[regions + 1];
+        ByteBuffer probe = ByteBuffer.allocate(4);
+        for (int i = 1; i < regions; i++) {
+            long boundary = (long) i * regionSize;
+            probe.clear();
+            while (probe.hasRemaining() && source.read(probe, boundary + probe.position()) > 0) {
+                // Keep reading until the probe is full
+            }
+            int skip = 0;
+            while (skip < probe.position() && (probe.get(skip) & 0xC0) == 0x80) {
+                skip++;
+            }
+            if (skip == probe.capacity()) {
+                // Valid UTF-8 never has four continuation bytes in a row
+                return null;
+            }
+            boundaries[i] = boundary + skip;
+        }
+        boundaries[regions] = size;
+        return boundaries;
+    }
+
+    private static boolean transformMapped(FileChannel source, FileChannel target, CaesarCipher cipher,
+                                           int regionSize) throws IOException {
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+            long length = Math.min(regionSize, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer in = source.map(FileChannel.MapMode.READ_ONLY, position, length);
+            MappedByteBuffer out = target.map(FileChannel.MapMode.READ_WRITE, position, length);
+
+            // A multibyte sequence cut off at the end of the window is picked up by the next one
+            int consumed = cipher.applyUtf8(in, out, last);
+            if (consumed <= 0) {
+                return false;
+            }
+            position += consumed;
+        }
+        return true;
+    }
+
+    /**
+     * One buffer of the asynchronous pipeline with the read or write currently using it.
+     * Reads and writes are resumed until complete, since either may transfer fewer bytes
+     * than requested.
+     */
+    private static final class AsyncBuffer {
+        final ByteBuffer buffer;
+        Future<Integer> read;
+        Future<Integer> write;
+        private long position;
+
+        AsyncBuffer(int size) {
+            this.buffer = ByteBuffer.allocateDirect(CARRY_SIZE + size);
+        }
+
+        void startRead(AsynchronousFileChannel source, long offset, long fileSize) {
+            buffer.clear();
+            buffer.position(CARRY_SIZE);
+            buffer.limit((int) Math.min(buffer.capacity(), CARRY_SIZE + fileSize - offset));
+            position = offset;
+            read = source.read(buffer, position);
+        }
+
+        void awaitRead(AsynchronousFileChannel source) throws IOException, InterruptedException, ExecutionException {
+            while (true) {
+                int count = read.get();
+                if (count < 0) {
+                    throw new IOException("File shrank while it was being translated");
+                }
+                position += count;
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+                read = source.read(buffer, position);
+            }
+            read = null;
+            buffer.flip();
+        }
+
+        void startWrite(AsynchronousFileChannel target, int start, int length, long offset) {
+            buffer.position(start).limit(start + length);
+            position = offset;
+            write = target.write(buffer, position);
+        }
+
+        void awaitWrite(AsynchronousFileChannel target) throws InterruptedException, ExecutionException {
+            while (write != null) {
+                position += write.get();
+                write = buffer.hasRemaining() ? target.write(buffer, position) : null;
+            }
+        }
+    }
+
+    /**
+     * Runs a whole-file transform through {@link #replace}, recording it as one
+     * {@link Metrics.Operation#FILE_TRANSFORM} measured in input bytes.
+     */
+    private static void measure(Path input, Path output, FileOperation operation) throws IOException {
+        Metrics.Sample sample = Metrics.start(Metrics.Operation.FILE_TRANSFORM);
+        try {
+            replace(output, operation);
+        } catch (IOException | RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+        sample.success(sample.enabled() ? Files.size(input) : 0);
+    }
+
+    /**
+     * Runs the operation against a temporary file next to the output and moves it over the
+     * output only once the operation has succeeded, so input that turns out to be malformed
+     * leaves an existing output untouched. As the input is never opened for writing, a file
+     * can also be translated onto itself.
+     */
+    private static void replace(Path output, FileOperation operation) throws IOException {
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        try {
+            operation.run(temporary);
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FileOperation {
+        void run(Path output) throws IOException;
+    }
+
+    /**
+     * Maps and translates a run of regions, splitting the run in half while it holds more
+     * than one region.
+     */
+    private static final class RegionTask extends RecursiveTask<Boolean> {
+        private final FileChannel source;
+        private final FileChannel target;
+        private final CaesarCipher cipher;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+
+        RegionTask(FileChannel source, FileChannel target, CaesarCipher cipher, long[] boundaries, int from, int to) {
+            this.source = source;
+            this.target = target;
+            this.cipher = cipher;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                RegionTask right = new RegionTask(source, target, cipher, boundaries, middle, to);
+                right.fork();
+                boolean left = new RegionTask(source, target, cipher, boundaries, from, middle).compute();
+                return right.join() && left;
+            }
+            long position = boundaries[from];
+            long length = boundaries[to] - position;
+            try {
+                MappedByteBuffer in = source.map(FileChannel.MapMode.READ_ONLY, position, length);
+                MappedByteBuffer out = target.map(FileChannel.MapMode.READ_WRITE, position, length);
+                return cipher.applyUtf8(in, out, true) == length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
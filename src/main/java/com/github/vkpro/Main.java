@@ -3,10 +3,19 @@ package com.github.vkpro;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) {
+        args = enableMetrics(args);
+
+        // Arguments select the non-interactive mode, which never builds the menu machinery
+        if (args.length > 0) {
+            System.exit(CommandLine.run(args));
+        }
+
         // Set console encoding
         System.setProperty("file.encoding", "UTF-8");
         System.setOut(new java.io.PrintStream(System.out, true, StandardCharsets.UTF_8));
@@ -43,6 +52,41 @@ public class Main {
         } // Scanner automatically closed with try-with-resources
     }
 
+    /**
+     * Handles the {@code --metrics} and {@code --metrics=<file>} flags, which may appear
+     * anywhere in the arguments. The metrics are printed to standard error as JSON, or
+     * written to the file, when the application exits.
+     *
+     * @return The remaining arguments
+     */
+    private static String[] enableMetrics(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--metrics") || args[i].startsWith("--metrics=")) {
+                String file = args[i].length() > "--metrics=".length() ? args[i].substring("--metrics=".length()) : null;
+                Metrics.setEnabled(true);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> dumpMetrics(file)));
+
+                String[] remaining = new String[args.length - 1];
+                System.arraycopy(args, 0, remaining, 0, i);
+                System.arraycopy(args, i + 1, remaining, i, args.length - i - 1);
+                return remaining;
+            }
+        }
+        return args;
+    }
+
+    private static void dumpMetrics(String file) {
+        if (file == null) {
+            System.err.print(Metrics.toJson());
+            return;
+        }
+        try {
+            Metrics.writeJson(Path.of(file));
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
     private static void displayMainMenu() {
         System.out.println("""
             Please choose an option:
@@ -119,13 +163,7 @@ public class Main {
         String expression = scanner.nextLine();
 
         try {
-            double result = ExpressionEvaluator.evaluate(expression);
-            // Check if result is an integer
-            if (result == (int) result) {
-                System.out.println("Result: " + (int) result);
-            } else {
-                System.out.println("Result: " + result);
-            }
+            System.out.println("Result: " + ExpressionEvaluator.evaluateToString(expression));
         } catch (Exception e) {
             System.out.println("Error evaluating expression: " + e.getMessage());
         }
@@ -173,48 +211,60 @@ public class Main {
 
     private static void encryptFromFile(Scanner scanner) {
         try {
-            System.out.print("Enter input file path: ");
+            System.out.print("Enter input file or directory path: ");
             String inputPath = scanner.nextLine();
             
-            System.out.print("Enter output file path: ");
+            System.out.print("Enter output file or directory path: ");
             String outputPath = scanner.nextLine();
             
             System.out.print("Enter shift value: ");
             int shift = scanner.nextInt();
             
-            String text = FileHandler.readFromFile(inputPath);
-            String encrypted = CaesarCipher.encrypt(text, shift);
-            FileHandler.writeToFile(outputPath, encrypted);
+            if (Files.isDirectory(Path.of(inputPath))) {
+                DirectoryProcessor.Summary summary = DirectoryProcessor.transformDirectory(
+                    Path.of(inputPath), Path.of(outputPath), CaesarCipher.forShift(shift));
+                summary.files().stream().filter(result -> !result.succeeded()).forEach(System.out::println);
+                System.out.println(summary);
+                return;
+            }
+
+            FileHandler.encryptFile(Path.of(inputPath), Path.of(outputPath), shift);
             
             System.out.println("Text encrypted and saved to " + outputPath);
         } catch (java.util.InputMismatchException e) {
             System.out.println("Error: Please enter a valid number for shift value.");
             scanner.nextLine(); // Clear the invalid input
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
         }
     }
     
     private static void decryptFromFile(Scanner scanner) {
         try {
-            System.out.print("Enter input file path: ");
+            System.out.print("Enter input file or directory path: ");
             String inputPath = scanner.nextLine();
             
-            System.out.print("Enter output file path: ");
+            System.out.print("Enter output file or directory path: ");
             String outputPath = scanner.nextLine();
             
             System.out.print("Enter shift value: ");
             int shift = scanner.nextInt();
             
-            String text = FileHandler.readFromFile(inputPath);
-            String decrypted = CaesarCipher.decrypt(text, shift);
-            FileHandler.writeToFile(outputPath, decrypted);
+            if (Files.isDirectory(Path.of(inputPath))) {
+                DirectoryProcessor.Summary summary = DirectoryProcessor.transformDirectory(
+                    Path.of(inputPath), Path.of(outputPath), CaesarCipher.forShift(-shift));
+                summary.files().stream().filter(result -> !result.succeeded()).forEach(System.out::println);
+                System.out.println(summary);
+                return;
+            }
+
+            FileHandler.decryptFile(Path.of(inputPath), Path.of(outputPath), shift);
             
             System.out.println("Text decrypted and saved to " + outputPath);
         } catch (java.util.InputMismatchException e) {
             System.out.println("Error: Please enter a valid number for shift value.");
             scanner.nextLine(); // Clear the invalid input
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
         }
     }
@@ -0,0 +1,381 @@
+package com.github.vkpro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for cipher, expression and file operations.
+ * <p>
+ * Metrics are off by default and are switched on with {@link #setEnabled(boolean)}, the
+ * {@code --metrics} command line flag or the {@code vkpro.metrics} system property. While
+ * they are off, an instrumented operation costs one read of a volatile flag. While they are
+ * on, each operation records its count, the characters or bytes it processed, its latency
+ * and, if it failed, the type of error, and commits an {@link OperationEvent} to any
+ * running Flight Recorder recording.
+ */
+public final class Metrics {
+
+    /**
+     * The measured operations.
+     */
+    public enum Operation {
+        CIPHER("chars"),
+        EVALUATE("chars"),
+        FILE_READ("chars"),
+        FILE_WRITE("chars"),
+        FILE_TRANSFORM("bytes");
+
+        private final String unit;
+
+        Operation(String unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * Returns what the processed units of this operation count.
+         *
+         * @return "chars" or "bytes"
+         */
+        public String unit() {
+            return unit;
+        }
+    }
+
+    /**
+     * The kinds of failure counted separately.
+     */
+    public enum ErrorType {
+        DIVISION_BY_ZERO,
+        ARITHMETIC,
+        MISMATCHED_PARENTHESES,
+        INVALID_INPUT,
+        IO,
+        OTHER;
+
+        /**
+         * Classifies the exception an operation failed with.
+         *
+         * @param error The exception
+         * @return The error type
+         */
+        public static ErrorType of(Throwable error) {
+            if (error instanceof ExactEvaluator.NumericException) {
+                return ARITHMETIC;
+            }
+            if (error instanceof ArithmeticException) {
+                return DIVISION_BY_ZERO;
+            }
+            if (error instanceof IllegalArgumentException) {
+                String message = error.getMessage();
+                return message != null && message.startsWith("Mismatched parentheses") ? MISMATCHED_PARENTHESES : INVALID_INPUT;
+            }
+            if (error instanceof IOException) {
+                return IO;
+            }
+            return OTHER;
+        }
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static volatile boolean enabled = Boolean.getBoolean("vkpro.metrics");
+
+    private static final Stats[] STATS = new Stats[Operation.values().length];
+
+    static {
+        for (Operation operation : Operation.values()) {
+            STATS[operation.ordinal()] = new Stats();
+        }
+    }
+
+    private Metrics() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Returns whether operations are being measured.
+     *
+     * @return True if metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches measuring on or off. Values recorded so far are kept.
+     *
+     * @param enabled Whether operations should be measured
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public static void reset() {
+        for (int i = 0; i < STATS.length; i++) {
+            STATS[i] = new Stats();
+        }
+    }
+
+    /**
+     * Returns the number of completed operations, failed ones included.
+     *
+     * @param operation The operation
+     * @return The operation count
+     */
+    public static long count(Operation operation) {
+        return STATS[operation.ordinal()].count.sum();
+    }
+
+    /**
+     * Returns the number of characters or bytes processed by successful operations.
+     *
+     * @param operation The operation
+     * @return The processed units
+     */
+    public static long units(Operation operation) {
+        return STATS[operation.ordinal()].units.sum();
+    }
+
+    /**
+     * Returns the number of operations that failed with the given type of error.
+     *
+     * @param operation The operation
+     * @param type      The error type
+     * @return The error count
+     */
+    public static long errors(Operation operation, ErrorType type) {
+        return STATS[operation.ordinal()].errors[type.ordinal()].sum();
+    }
+
+    /**
+     * Returns an upper bound for the given latency percentile, accurate to within about 6%
+     * and never above the highest recorded latency.
+     *
+     * @param operation  The operation
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public static long latencyPercentile(Operation operation, double percentile) {
+        return STATS[operation.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * Renders every metric as a JSON object.
+     *
+     * @return The metrics in JSON
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"operations\": {");
+        Operation[] operations = Operation.values();
+        for (int o = 0; o < operations.length; o++) {
+            Operation operation = operations[o];
+            Stats stats = STATS[o];
+            long count = stats.count.sum();
+            json.append(o == 0 ? "\n" : ",\n")
+                .append("    \"").append(name(operation)).append("\": {")
+                .append("\"count\": ").append(count)
+                .append(", \"").append(operation.unit()).append("\": ").append(stats.units.sum())
+                .append(", \"errors\": {");
+            for (ErrorType type : ErrorType.values()) {
+                json.append(type.ordinal() == 0 ? "" : ", ")
+                    .append('"').append(name(type)).append("\": ").append(stats.errors[type.ordinal()].sum());
+            }
+            json.append("}, \"latencyNanos\": {");
+            for (double percentile : PERCENTILES) {
+                json.append("\"p").append(String.valueOf(percentile).replace(".0", "").replace('.', '_'))
+                    .append("\": ").append(stats.percentile(percentile)).append(", ");
+            }
+            json.append("\"max\": ").append(count == 0 ? 0 : stats.maxLatency.get())
+                .append(", \"mean\": ").append(count == 0 ? 0 : stats.totalLatency.sum() / count)
+                .append("}}");
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * Writes the metrics as JSON to the given file.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeJson(Path file) throws IOException {
+        Files.writeString(file, toJson(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts measuring an operation.
+     *
+     * @return The sample to complete when the operation ends, or a shared no-op sample if
+     *         metrics are disabled
+     */
+    static Sample start(Operation operation) {
+        return enabled ? new Sample(operation) : Sample.DISABLED;
+    }
+
+    private static String name(Enum<?> constant) {
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * One operation in progress.
+     */
+    static final class Sample {
+        static final Sample DISABLED = new Sample(null);
+
+        private final Operation operation;
+        private final long start;
+        private final OperationEvent event;
+
+        private Sample(Operation operation) {
+            this.operation = operation;
+            if (operation == null) {
+                this.start = 0;
+                this.event = null;
+            } else {
+                this.event = new OperationEvent();
+                this.event.begin();
+                this.start = System.nanoTime();
+            }
+        }
+
+        /**
+         * Returns whether this sample records anything, so that callers can skip work that
+         * only feeds the metrics.
+         */
+        boolean enabled() {
+            return operation != null;
+        }
+
+        /**
+         * Records the operation as completed after processing the given number of characters or bytes.
+         */
+        void success(long units) {
+            if (operation != null) {
+                STATS[operation.ordinal()].record(System.nanoTime() - start, units, null);
+                commit(units, null);
+            }
+        }
+
+        /**
+         * Records the operation as failed with the given exception.
+         */
+        void failure(Throwable error) {
+            if (operation != null) {
+                ErrorType type = ErrorType.of(error);
+                STATS[operation.ordinal()].record(System.nanoTime() - start, 0, type);
+                commit(0, type);
+            }
+        }
+
+        private void commit(long units, ErrorType type) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name(operation);
+                event.units = units;
+                event.error = type == null ? null : name(type);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The counters of one operation.
+     */
+    private static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder units = new LongAdder();
+        final LongAdder totalLatency = new LongAdder();
+        final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+        final LongAdder[] errors = new LongAdder[ErrorType.values().length];
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        Stats() {
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Returns the percentile from the histogram, capped at the exact maximum.
+         */
+        long percentile(double percentile) {
+            return Math.min(latencies.percentile(percentile), maxLatency.get());
+        }
+
+        void record(long nanos, long processed, ErrorType error) {
+            count.increment();
+            totalLatency.add(nanos);
+            maxLatency.accumulate(nanos);
+            latencies.record(nanos);
+            if (error == null) {
+                units.add(processed);
+            } else {
+                errors[error.ordinal()].increment();
+            }
+        }
+    }
+
+    /**
+     * A histogram with logarithmic buckets, each split into {@code 2^SUB_BUCKET_BITS}
+     * linear sub-buckets, in the style of HdrHistogram. Values up to {@code Long.MAX_VALUE}
+     * are recorded with a relative error of at most {@code 2^-SUB_BUCKET_BITS}.
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+
+        void record(long value) {
+            buckets.incrementAndGet(bucketOf(Math.max(0, value)));
+        }
+
+        /**
+         * Returns the highest value of the bucket holding the given percentile.
+         */
+        long percentile(double percentile) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return highestValueOf(buckets.length() - 1);
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) << SUB_BUCKET_BITS | (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        }
+
+        static long highestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+            long lowest = (long) (SUB_BUCKETS | bucket & (SUB_BUCKETS - 1)) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.vkpro;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event committed for every operation measured by {@link Metrics}.
+ * Events are only created while metrics are enabled, so a recording has to be combined
+ * with {@code -Dvkpro.metrics=true} or the {@code --metrics} flag.
+ */
+@Name("com.github.vkpro.Operation")
+@Label("Operation")
+@Category("JavaConsoleApp")
+@Description("A cipher, expression or file operation")
+final class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Units Processed")
+    @Description("Characters for cipher and expression operations, bytes for file operations")
+    long units;
+
+    @Label("Error")
+    @Description("The error type if the operation failed")
+    String error;
+}
@@ -0,0 +1,223 @@
+package com.github.vkpro;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running server that answers cipher and expression requests over a local socket,
+ * so that scripts pay for JVM startup and JIT warm-up once instead of once per operation.
+ * <p>
+ * The protocol is line based and UTF-8 encoded. Each request line is answered by exactly
+ * one response line, {@code OK <result>} or {@code ERROR <message>}:
+ * <pre>
+ * ENCRYPT &lt;shift&gt; &lt;text&gt;
+ * DECRYPT &lt;shift&gt; &lt;text&gt;
+ * EVAL &lt;expression&gt;
+ * PING
+ * </pre>
+ * Commands are case-insensitive. Clients may send several requests before reading the
+ * responses; responses are flushed once no further request is waiting. Every connection
+ * is served on its own virtual thread.
+ */
+public final class Server implements Closeable {
+    /**
+     * The TCP port used when none is given.
+     */
+    public static final int DEFAULT_PORT = 7070;
+
+    static final String OK = "OK ";
+    static final String ERROR = "ERROR ";
+
+    private final ServerSocketChannel channel;
+    private final SocketAddress address;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread acceptor;
+
+    private Server(ServerSocketChannel channel) throws IOException {
+        this.channel = channel;
+        this.address = channel.getLocalAddress();
+        this.acceptor = Thread.ofVirtual().name("server-acceptor").start(this::acceptConnections);
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port The TCP port to listen on, or 0 for any free port
+     * @return The running server
+     * @throws IOException If the port cannot be bound
+     */
+    public static Server start(int port) throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Starts a server on the given TCP or Unix domain socket address.
+     *
+     * @param address An {@link InetSocketAddress} or a {@link UnixDomainSocketAddress}
+     * @return The running server
+     * @throws IOException If the address cannot be bound
+     */
+    public static Server start(SocketAddress address) throws IOException {
+        ServerSocketChannel channel = address instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+        try {
+            channel.bind(address);
+            return new Server(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the address the server listens on, with the actual port if port 0 was requested.
+     *
+     * @return The bound address
+     */
+    public SocketAddress address() {
+        return address;
+    }
+
+    /**
+     * Waits until the server has been closed.
+     *
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and removes the socket file of a
+     * Unix domain socket.
+     *
+     * @throws IOException If the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+            // Interrupting a thread blocked on a socket channel closes that channel
+            connections.shutdownNow();
+        } finally {
+            if (address instanceof UnixDomainSocketAddress unix) {
+                Files.deleteIfExists(unix.getPath());
+            }
+        }
+    }
+
+    /**
+     * Answers a single request line.
+     *
+     * @param request The request without its line terminator
+     * @return The response without its line terminator
+     */
+    static String handle(String request) {
+        try {
+            return OK + execute(request);
+        } catch (RuntimeException e) {
+            return ERROR + e.getMessage();
+        }
+    }
+
+    private static String execute(String request) {
+        int space = request.indexOf(' ');
+        String command = (space < 0 ? request : request.substring(0, space)).toUpperCase(Locale.ROOT);
+        String argument = space < 0 ? "" : request.substring(space + 1);
+        return switch (command) {
+            case "ENCRYPT" -> transform(argument, 1);
+            case "DECRYPT" -> transform(argument, -1);
+            case "EVAL" -> ExpressionEvaluator.evaluateToString(argument);
+            case "PING" -> "PONG";
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        };
+    }
+
+    private static String transform(String argument, int direction) {
+        int space = argument.indexOf(' ');
+        String shiftValue = space < 0 ? argument : argument.substring(0, space);
+        int shift;
+        try {
+            shift = Integer.parseInt(shiftValue);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shift must be a whole number: " + shiftValue);
+        }
+        String text = space < 0 ? "" : argument.substring(space + 1);
+        return CaesarCipher.forShift(direction * shift).apply(text);
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            SocketChannel connection;
+            try {
+                connection = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                connections.submit(() -> serve(connection));
+            } catch (RuntimeException e) {
+                // The executor was shut down while the connection was being accepted
+                closeQuietly(connection);
+                return;
+            }
+        }
+    }
+
+    private static void serve(SocketChannel connection) {
+        try (connection;
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(connection), StandardCharsets.UTF_8))) {
+            if (connection.getLocalAddress() instanceof InetSocketAddress) {
+                // Responses are small; sending them at once matters more than packing packets
+                connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            String request;
+            while ((request = reader.readLine()) != null) {
+                writer.write(handle(request));
+                writer.write('\n');
+                if (!reader.ready()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away or the server is closing; nothing is left to answer
+        }
+    }
+
+    private static void closeQuietly(SocketChannel connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already failing; the connection is unusable either way
+        }
+    }
+}
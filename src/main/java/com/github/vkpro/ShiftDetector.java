@@ -0,0 +1,330 @@
+package com.github.vkpro;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Recovers the shift of a Caesar ciphertext by letter frequency analysis.
+ * <p>
+ * A single pass counts every character into a primitive histogram. Afterwards the counts
+ * of each language, upper and lower case together, are compared with the expected letter
+ * frequencies of that language for every candidate shift using the chi-squared statistic.
+ * The best shifts of the languages are combined into one shift that is valid for all of
+ * them. Only letters of alphabets with a known frequency table (English and Russian) are
+ * scored; letters of other registered alphabets are ignored.
+ */
+public final class ShiftDetector {
+    /**
+     * Number of evenly spaced windows read from a file in sampling mode.
+     */
+    static final int SAMPLE_WINDOWS = 64;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Relative letter frequencies of English text, a to z
+    private static final double[] ENGLISH_FREQUENCIES = {
+        8.167, 1.492, 2.782, 4.253, 12.702, 2.228, 2.015, 6.094, 6.966, 0.153, 0.772, 4.025, 2.406,
+        6.749, 7.507, 1.929, 0.095, 5.987, 6.327, 9.056, 2.758, 0.978, 2.360, 0.150, 1.974, 0.074
+    };
+
+    // Relative letter frequencies of Russian text, а to я including ё
+    private static final double[] RUSSIAN_FREQUENCIES = {
+        8.01, 1.59, 4.54, 1.70, 2.98, 8.45, 0.04, 0.94, 1.65, 7.35, 1.21, 3.49, 4.40, 3.21, 6.70, 10.97, 2.81,
+        4.73, 5.47, 6.26, 2.62, 0.26, 0.97, 0.48, 1.44, 0.73, 0.36, 0.04, 1.90, 1.74, 0.32, 0.64, 2.01
+    };
+
+    private static final Language[] LANGUAGES = {
+        new Language(ENGLISH_FREQUENCIES, Alphabet.ENGLISH_LOWERCASE, Alphabet.ENGLISH_UPPERCASE),
+        new Language(RUSSIAN_FREQUENCIES, Alphabet.RUSSIAN_LOWERCASE, Alphabet.RUSSIAN_UPPERCASE)
+    };
+
+    /**
+     * The detected shift.
+     *
+     * @param shift      The shift the text was most likely encrypted with, normalized to
+     *                   {@code [0, shiftPeriod)} of the registry; decrypting with it recovers the text
+     * @param confidence How clearly the best shift beats the runner-up, from 0 (no letters or
+     *                   no clear winner) to 1
+     * @param letters    The number of scored letters the estimate is based on
+     */
+    public record Estimate(int shift, double confidence, long letters) {
+
+        @Override
+        public String toString() {
+            return String.format("Shift %d (confidence %.2f, %d letters)", shift, confidence, letters);
+        }
+    }
+
+    private record Language(double[] frequencies, Alphabet... alphabets) {
+    }
+
+    private ShiftDetector() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Detects the shift of the given ciphertext.
+     *
+     * @param text     The ciphertext
+     * @param registry The alphabets the text was encrypted with
+     * @return The detected shift
+     */
+    public static Estimate detect(CharSequence text, AlphabetRegistry registry) {
+        Histogram histogram = new Histogram(registry);
+        char[] buffer = new char[Math.min(BUFFER_SIZE, text.length())];
+        for (int from = 0; from < text.length(); from += buffer.length) {
+            int length = Math.min(buffer.length, text.length() - from);
+            if (text instanceof String string) {
+                string.getChars(from, from + length, buffer, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    buffer[i] = text.charAt(from + i);
+                }
+            }
+            histogram.add(buffer, length);
+        }
+        return histogram.estimate();
+    }
+
+    /**
+     * Detects the shift of everything read from the reader in one streaming pass. The
+     * reader is not closed.
+     *
+     * @param reader   The source of the ciphertext
+     * @param registry The alphabets the text was encrypted with
+     * @return The detected shift
+     * @throws IOException If reading fails
+     */
+    public static Estimate detect(Reader reader, AlphabetRegistry registry) throws IOException {
+        Histogram histogram = new Histogram(registry);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            histogram.add(buffer, read);
+        }
+        return histogram.estimate();
+    }
+
+    /**
+     * Detects the shift of a UTF-8 file. A file larger than the sample size is not read in
+     * full; instead {@link #SAMPLE_WINDOWS} evenly spaced windows adding up to about the
+     * sample size (at most 64 MB) are read, which is usually enough for a confident answer.
+     *
+     * @param file       The UTF-8 ciphertext file
+     * @param sampleSize The maximum number of bytes to read, or {@link Long#MAX_VALUE} to read everything
+     * @param registry   The alphabets the text was encrypted with
+     * @return The detected shift
+     * @throws IOException If reading fails
+     */
+    public static Estimate detect(Path file, long sampleSize, AlphabetRegistry registry) throws IOException {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= sampleSize) {
+                // Malformed bytes decode to replacement characters, which are not letters
+                return detect(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), registry);
+            }
+
+            Histogram histogram = new Histogram(registry);
+            int windowSize = (int) Math.max(16, Math.min(1 << 20, sampleSize / SAMPLE_WINDOWS));
+            long stride = size / SAMPLE_WINDOWS;
+            ByteBuffer window = ByteBuffer.allocate(windowSize);
+            char[] chars = new char[windowSize];
+            for (int w = 0; w < SAMPLE_WINDOWS; w++) {
+                window.clear();
+                long position = w * stride;
+                while (window.hasRemaining() && channel.read(window, position + window.position()) > 0) {
+                    // Keep reading until the window is full
+                }
+                window.flip();
+                histogram.add(chars, decodeWindow(window, chars));
+            }
+            return histogram.estimate();
+        }
+    }
+
+    /**
+     * Decodes a window of UTF-8 bytes that may start and end in the middle of a sequence.
+     * Partial and malformed sequences are dropped; they are never letters of interest.
+     */
+    private static int decodeWindow(ByteBuffer window, char[] chars) {
+        int length = 0;
+        int i = window.position();
+        int limit = window.limit();
+        while (i < limit) {
+            int b0 = window.get(i) & 0xFF;
+            if (b0 < 0x80) {
+                chars[length++] = (char) b0;
+                i++;
+            } else if (b0 >= 0xC2 && b0 <= 0xDF && i + 1 < limit && (window.get(i + 1) & 0xC0) == 0x80) {
+                chars[length++] = (char) (((b0 & 0x1F) << 6) | (window.get(i + 1) & 0x3F));
+                i += 2;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF && i + 2 < limit
+                && (window.get(i + 1) & 0xC0) == 0x80 && (window.get(i + 2) & 0xC0) == 0x80) {
+                chars[length++] = (char) (((b0 & 0x0F) << 12) | ((window.get(i + 1) & 0x3F) << 6)
+                    | (window.get(i + 2) & 0x3F));
+                i += 3;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Character counts gathered in an {@code int[]} indexed directly by character, so that
+     * counting is one increment per character. Counts are moved into {@code long} totals
+     * before they can overflow.
+     */
+    private static final class Histogram {
+        private final AlphabetRegistry registry;
+        private final int[] counts;
+        private final long[] totals;
+        private int pending;
+
+        Histogram(AlphabetRegistry registry) {
+            this.registry = registry;
+            this.counts = new int[registry.denseLength()];
+            this.totals = new long[counts.length];
+        }
+
+        void add(char[] chars, int length) {
+            if (pending > Integer.MAX_VALUE - length) {
+                flush();
+            }
+            int[] counts = this.counts;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c < counts.length) {
+                    counts[c]++;
+                }
+            }
+            pending += length;
+        }
+
+        Estimate estimate() {
+            flush();
+            int[] residues = new int[LANGUAGES.length];
+            int[] moduli = new int[LANGUAGES.length];
+            long[] letters = new long[LANGUAGES.length];
+            double[] confidences = new double[LANGUAGES.length];
+            for (int l = 0; l < LANGUAGES.length; l++) {
+                Language language = LANGUAGES[l];
+                int size = language.frequencies().length;
+                moduli[l] = size;
+                long[] observed = new long[size];
+                for (Alphabet alphabet : language.alphabets()) {
+                    if (!registry.alphabets().contains(alphabet)) {
+                        continue;
+                    }
+                    for (int i = 0; i < size; i++) {
+                        char letter = alphabet.letterAt(i);
+                        if (letter < totals.length) {
+                            observed[i] += totals[letter];
+                        }
+                    }
+                }
+                for (long count : observed) {
+                    letters[l] += count;
+                }
+                if (letters[l] > 0) {
+                    score(language.frequencies(), observed, letters[l], l, residues, confidences);
+                }
+            }
+            return combine(residues, moduli, letters, confidences);
+        }
+
+        /**
+         * Scores every shift of one language and stores the best one and its confidence.
+         */
+        private static void score(double[] frequencies, long[] observed, long total, int language,
+                                  int[] residues, double[] confidences) {
+            int size = frequencies.length;
+            double frequencySum = 0;
+            for (double frequency : frequencies) {
+                frequencySum += frequency;
+            }
+            double best = Double.MAX_VALUE;
+            double second = Double.MAX_VALUE;
+            int bestShift = 0;
+            for (int shift = 0; shift < size; shift++) {
+                double chiSquared = 0;
+                for (int i = 0; i < size; i++) {
+                    double expected = total * frequencies[i] / frequencySum;
+                    double difference = observed[(i + shift) % size] - expected;
+                    chiSquared += difference * difference / expected;
+                }
+                if (chiSquared < best) {
+                    second = best;
+                    best = chiSquared;
+                    bestShift = shift;
+                } else if (chiSquared < second) {
+                    second = chiSquared;
+                }
+            }
+            residues[language] = bestShift;
+            confidences[language] = second == 0 ? 0 : 1 - best / second;
+        }
+
+        /**
+         * Finds the smallest shift that agrees with each language's best shift, starting
+         * with the languages that have the most letters. A language that cannot be
+         * reconciled with the ones before it is left out.
+         */
+        private Estimate combine(int[] residues, int[] moduli, long[] letters, double[] confidences) {
+            Integer[] order = new Integer[residues.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(letters[b], letters[a]));
+
+            long shift = 0;
+            long modulus = 1;
+            long scored = 0;
+            double weightedConfidence = 0;
+            for (int l : order) {
+                if (letters[l] == 0) {
+                    continue;
+                }
+                long combined = -1;
+                for (long candidate = shift; candidate < modulus * moduli[l]; candidate += modulus) {
+                    if (candidate % moduli[l] == residues[l]) {
+                        combined = candidate;
+                        break;
+                    }
+                }
+                if (combined < 0) {
+                    continue;
+                }
+                shift = combined;
+                modulus = modulus / gcd(modulus, moduli[l]) * moduli[l];
+                scored += letters[l];
+                weightedConfidence += confidences[l] * letters[l];
+            }
+            int normalized = (int) (shift % registry.shiftPeriod());
+            return new Estimate(normalized, scored == 0 ? 0 : weightedConfidence / scored, scored);
+        }
+
+        private void flush() {
+            for (int c = 0; c < counts.length; c++) {
+                totals[c] += counts[c];
+                counts[c] = 0;
+            }
+            pending = 0;
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+}
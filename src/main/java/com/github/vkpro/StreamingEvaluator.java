@@ -0,0 +1,407 @@
+package com.github.vkpro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression in one pass over its characters without building a tree or a
+ * program, for inputs too long or too deeply nested to compile.
+ * <p>
+ * The expression is read through a fixed-size buffer and reduced with the shunting-yard
+ * algorithm on two primitive stacks, so memory grows only with the number of operators
+ * still waiting for an operand, never with the length of the input. Every operation is
+ * applied as soon as its operands are known, in the same order as a compiled expression,
+ * so both give identical results. The grammar is the one of
+ * {@link ExpressionEvaluator#compile(String)}, except that variables have no values here.
+ * <p>
+ * Errors are reported in the order they are read. An expression such as {@code 1/0/}
+ * therefore fails with the division by zero, an {@link ArithmeticException}, before the
+ * trailing operator is seen; {@code compile} checks the whole input first and reports it
+ * as incomplete with an {@link IllegalArgumentException}.
+ */
+final class StreamingEvaluator {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Entries of the operator stack that are not instructions
+    private static final int PARENTHESIS = 100;
+    private static final int CALL_SQRT = 101;
+    private static final int CALL_ABS = 102;
+    private static final int CALL_MIN = 103;
+    private static final int CALL_MAX = 104;
+
+    // Set on a min or max call once its first argument separator has been read
+    private static final int HAS_SEPARATOR = 0x100;
+
+    private static final int END = -1;
+
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;
+    private final CharSequence text;
+    private final ExpressionLimits limits;
+    private final char[] buffer;
+    private int bufferPosition;
+    private int bufferLength;
+    private long textPosition;
+    private long consumed;
+
+    private double[] operands = new double[16];
+    private int operandCount;
+    private int[] operators = new int[16];
+    private int operatorCount;
+    private long totalOperands;
+
+    /**
+     * Prepares to evaluate everything read from the reader as one expression. The reader
+     * is not closed.
+     */
+    StreamingEvaluator(Reader reader, ExpressionLimits limits) {
+        this(reader, null, limits);
+    }
+
+    /**
+     * Prepares to evaluate a character sequence as one expression.
+     */
+    StreamingEvaluator(CharSequence text, ExpressionLimits limits) {
+        this(null, text, limits);
+        if (text.length() > limits.maxLength()) {
+            throw new IllegalArgumentException("Expression is longer than " + limits.maxLength() + " characters");
+        }
+    }
+
+    private StreamingEvaluator(Reader reader, CharSequence text, ExpressionLimits limits) {
+        this.reader = reader;
+        this.text = text;
+        this.limits = limits;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads and evaluates the expression. Can only be called once.
+     *
+     * @throws IOException If reading fails
+     */
+    double evaluate() throws IOException {
+        try {
+            return run();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the number of characters read so far.
+     */
+    long consumed() {
+        return consumed;
+    }
+
+    private double run() {
+        boolean expectOperand = true;
+        int c = next();
+        while (true) {
+            if (c != END && Character.isWhitespace(c)) {
+                c = next();
+                continue;
+            }
+            if (expectOperand) {
+                if (c == '-') {
+                    pushOperator(CompiledExpression.NEGATE);
+                } else if (c == '(') {
+                    pushOperator(PARENTHESIS);
+                } else if ((c >= '0' && c <= '9') || c == '.' || (c != END && Character.isDigit(c))) {
+                    c = readNumber(c);
+                    expectOperand = false;
+                    continue;
+                } else if (c != END && isNameStart((char) c)) {
+                    // A call is open and its first argument follows
+                    c = openCall(c);
+                    continue;
+                } else if (c == END) {
+                    throw new IllegalArgumentException(operandCount == 0 && operatorCount == 0
+                        ? "Expression cannot be empty" : "Incomplete expression");
+                } else {
+                    throw unexpected(c);
+                }
+            } else {
+                if (c == END) {
+                    break;
+                }
+                int opcode = c < 128 ? binaryOpcode((char) c) : 0;
+                if (opcode != 0) {
+                    reduce(precedence(opcode), opcode == CompiledExpression.POWER);
+                    pushOperator(opcode);
+                    expectOperand = true;
+                } else if (c == ')') {
+                    closeParenthesis();
+                } else if (c == ',') {
+                    separateArgument();
+                    expectOperand = true;
+                } else {
+                    throw unexpected(c);
+                }
+            }
+            c = next();
+        }
+
+        reduce(0, false);
+        if (operatorCount > 0) {
+            throw new IllegalArgumentException("Mismatched parentheses in expression: missing ')' at end");
+        }
+        return operands[0];
+    }
+
+    /**
+     * Reads a number literal, pushes its value and returns the character that ended it.
+     * Literals that fit in 53 bits with at most 22 fraction digits are converted directly;
+     * anything else, including malformed literals, is handed to {@link Double#parseDouble}.
+     */
+    private int readNumber(int c) {
+        StringBuilder literal = new StringBuilder();
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean exact = true;
+        while (c != END) {
+            char d = (char) c;
+            if (d >= '0' && d <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || d != '0') {
+                    significantDigits++;
+                }
+                if (significantDigits > 15) {
+                    exact = false;
+                }
+                mantissa = mantissa * 10 + (d - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (d == '.') {
+                exact &= !seenPoint;
+                seenPoint = true;
+            } else if (Character.isDigit(d)) {
+                exact = false; // A digit from another script, which parseDouble rejects
+            } else if (!isRemovableWhitespace(d)) {
+                break;
+            }
+            if (!isRemovableWhitespace(d)) {
+                if (literal.length() == limits.maxLiteralLength()) {
+                    throw new IllegalArgumentException("Number literal is longer than " + limits.maxLiteralLength()
+                        + " characters");
+                }
+                literal.append(d);
+            }
+            c = next();
+        }
+
+        double value = exact && seenDigit && fractionDigits < POWERS_OF_TEN.length
+            ? mantissa / POWERS_OF_TEN[fractionDigits]
+            : Double.parseDouble(literal.toString());
+        pushOperand(value);
+        return c;
+    }
+
+    /**
+     * Reads a function name and its opening parenthesis and returns the character after
+     * them. Names that are not followed by a parenthesis are variables, which have no value.
+     */
+    private int openCall(int c) {
+        StringBuilder name = new StringBuilder();
+        while (c != END && (isNameStart((char) c) || (c >= '0' && c <= '9') || isRemovableWhitespace((char) c))) {
+            if (!isRemovableWhitespace((char) c)) {
+                name.append((char) c);
+            }
+            c = next();
+        }
+        while (c != END && Character.isWhitespace(c)) {
+            c = next();
+        }
+        if (c != '(') {
+            throw new IllegalArgumentException("Missing value for variable: " + name);
+        }
+        pushOperator(switch (name.toString()) {
+            case "sqrt" -> CALL_SQRT;
+            case "abs" -> CALL_ABS;
+            case "min" -> CALL_MIN;
+            case "max" -> CALL_MAX;
+            default -> throw new IllegalArgumentException("Unknown function: " + name);
+        });
+        return next();
+    }
+
+    private void closeParenthesis() {
+        reduce(0, false);
+        if (operatorCount == 0) {
+            throw new IllegalArgumentException("Mismatched parentheses in expression: unexpected ')' at position "
+                + consumed);
+        }
+        int marker = operators[--operatorCount];
+        switch (marker) {
+            case PARENTHESIS -> {
+                // The value inside is already on top of the operand stack
+            }
+            case CALL_SQRT -> apply(CompiledExpression.SQRT);
+            case CALL_ABS -> apply(CompiledExpression.ABS);
+            case CALL_MIN | HAS_SEPARATOR, CALL_MAX | HAS_SEPARATOR -> {
+                // The min or max operators between the arguments have just been applied
+            }
+            case CALL_MIN, CALL_MAX -> throw new IllegalArgumentException("Function " + (marker == CALL_MIN ? "min" : "max")
+                + " takes at least 2 arguments but got 1");
+            default -> throw new IllegalStateException("Unknown marker: " + marker);
+        }
+    }
+
+    private void separateArgument() {
+        reduce(0, false);
+        int marker = operatorCount == 0 ? PARENTHESIS : operators[operatorCount - 1] & ~HAS_SEPARATOR;
+        if (marker == CALL_SQRT || marker == CALL_ABS) {
+            throw new IllegalArgumentException("Function " + (marker == CALL_SQRT ? "sqrt" : "abs")
+                + " takes 1 argument but got more");
+        }
+        if (marker != CALL_MIN && marker != CALL_MAX) {
+            throw invalidFormat();
+        }
+        operators[operatorCount - 1] = marker | HAS_SEPARATOR;
+        // The separator acts as the loosest binary operator inside the call
+        pushOperator(marker == CALL_MIN ? CompiledExpression.MIN : CompiledExpression.MAX);
+    }
+
+    /**
+     * Applies the operators on top of the stack that bind more tightly than an incoming
+     * operator of the given precedence, or as tightly if that operator is left-associative.
+     * Stops at a parenthesis or call.
+     */
+    private void reduce(int incomingPrecedence, boolean rightAssociative) {
+        while (operatorCount > 0) {
+            int top = operators[operatorCount - 1];
+            if (top >= PARENTHESIS) {
+                return;
+            }
+            int precedence = precedence(top);
+            if (precedence < incomingPrecedence || (precedence == incomingPrecedence && rightAssociative)) {
+                return;
+            }
+            operatorCount--;
+            apply(top);
+        }
+    }
+
+    private void apply(int opcode) {
+        if (opcode == CompiledExpression.NEGATE || opcode == CompiledExpression.SQRT || opcode == CompiledExpression.ABS) {
+            operands[operandCount - 1] = CompiledExpression.apply(opcode, operands[operandCount - 1]);
+            return;
+        }
+        double b = operands[--operandCount];
+        double a = operands[operandCount - 1];
+        if (b == 0 && (opcode == CompiledExpression.DIVIDE || opcode == CompiledExpression.MODULO)) {
+            throw new ArithmeticException("Division by zero");
+        }
+        operands[operandCount - 1] = CompiledExpression.apply(opcode, a, b);
+    }
+
+    private void pushOperator(int operator) {
+        if (operatorCount == limits.maxDepth()) {
+            throw new IllegalArgumentException("Expression is nested more than " + limits.maxDepth() + " levels deep");
+        }
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+        }
+        operators[operatorCount++] = operator;
+    }
+
+    private void pushOperand(double value) {
+        if (++totalOperands > limits.maxOperands()) {
+            throw new IllegalArgumentException("Expression has more than " + limits.maxOperands() + " operands");
+        }
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = value;
+    }
+
+    private static int binaryOpcode(char c) {
+        return switch (c) {
+            case '+' -> CompiledExpression.ADD;
+            case '-' -> CompiledExpression.SUBTRACT;
+            case '*' -> CompiledExpression.MULTIPLY;
+            case '/' -> CompiledExpression.DIVIDE;
+            case '%' -> CompiledExpression.MODULO;
+            case '^' -> CompiledExpression.POWER;
+            default -> 0;
+        };
+    }
+
+    private static int precedence(int opcode) {
+        return switch (opcode) {
+            case CompiledExpression.MIN, CompiledExpression.MAX -> 0;
+            case CompiledExpression.ADD, CompiledExpression.SUBTRACT -> 1;
+            case CompiledExpression.NEGATE -> 3;
+            case CompiledExpression.POWER -> 4;
+            default -> 2;
+        };
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isRemovableWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private IllegalArgumentException unexpected(int c) {
+        if (binaryOpcode((char) c) != 0 || c == '(' || c == ')' || c == ',' || c == '.'
+            || isNameStart((char) c) || (c >= '0' && c <= '9')) {
+            return invalidFormat();
+        }
+        return new IllegalArgumentException("Invalid character in expression: " + (char) c);
+    }
+
+    private IllegalArgumentException invalidFormat() {
+        return new IllegalArgumentException("Invalid expression format at position " + consumed);
+    }
+
+    /**
+     * Returns the next character, or {@link #END} once the input is exhausted.
+     */
+    private int next() {
+        if (bufferPosition == bufferLength && !fill()) {
+            return END;
+        }
+        if (++consumed > limits.maxLength()) {
+            throw new IllegalArgumentException("Expression is longer than " + limits.maxLength() + " characters");
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private boolean fill() {
+        if (reader != null) {
+            try {
+                int read;
+                do {
+                    read = reader.read(buffer);
+                } while (read == 0);
+                bufferLength = Math.max(read, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            int length = (int) Math.min(buffer.length, text.length() - textPosition);
+            for (int i = 0; i < length; i++) {
+                buffer[i] = text.charAt((int) textPosition + i);
+            }
+            textPosition += length;
+            bufferLength = length;
+        }
+        bufferPosition = 0;
+        return bufferLength > 0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlphabetRegistryTest {
+
+    private static final Alphabet GREEK_LOWERCASE = new Alphabet("Greek lowercase", "αβγδεζηθικλμνξοπρστυφχψω");
+
+    // Letters above the dense range, so they go through the fallback table
+    private static final Alphabet GEORGIAN = new Alphabet("Georgian", "ႠႡႢႣႤႥ");
+    private static final Alphabet HIRAGANA = new Alphabet("Hiragana", "あいうえお");
+
+    @Test
+    @DisplayName("Standard registry translates exactly like the original four alphabets")
+    void testStandardMatchesReference() {
+        String[] alphabets = {
+            "abcdefghijklmnopqrstuvwxyz", "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            "абвгдеёжзийклмнопрстуфхцчшщъыьэюя", "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ"
+        };
+        for (int shift : new int[]{0, 1, 3, 25, 26, 32, 33, 857}) {
+            CaesarCipher cipher = CaesarCipher.forShift(shift, AlphabetRegistry.standard());
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                char expected = (char) c;
+                for (String alphabet : alphabets) {
+                    int index = alphabet.indexOf(c);
+                    if (index >= 0) {
+                        expected = alphabet.charAt((index + shift) % alphabet.length());
+                    }
+                }
+                assertEquals(expected, cipher.apply((char) c), "shift " + shift + ", char " + c);
+            }
+        }
+        assertEquals(858, AlphabetRegistry.standard().shiftPeriod());
+    }
+
+    @Test
+    void testLookup() {
+        AlphabetRegistry registry = AlphabetRegistry.standard().with(GEORGIAN);
+
+        assertSame(Alphabet.RUSSIAN_LOWERCASE, registry.alphabetOf('ё'));
+        assertEquals(6, registry.indexOf('ё'));
+        assertSame(Alphabet.ENGLISH_UPPERCASE, registry.alphabetOf('Z'));
+        assertEquals(25, registry.indexOf('Z'));
+        assertSame(GEORGIAN, registry.alphabetOf('Ⴃ'));
+        assertEquals(3, registry.indexOf('Ⴃ'));
+        assertNull(registry.alphabetOf('1'));
+        assertEquals(-1, registry.indexOf('あ'));
+        assertEquals(-1, registry.indexOf(Character.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Added alphabets are translated next to the built-in ones")
+    void testAdditionalAlphabets() {
+        AlphabetRegistry registry = AlphabetRegistry.standard().with(GREEK_LOWERCASE).with(GEORGIAN).with(HIRAGANA);
+        CaesarCipher cipher = CaesarCipher.forShift(1, registry);
+
+        assertEquals("Ifmmp, βγω Ⴁ ႠいあЁ!", cipher.apply("Hello, αβψ Ⴀ ႥあおЕ!"));
+        assertEquals("Hello, αβψ Ⴀ ႥあおЕ!", cipher.inverse().apply("Ifmmp, βγω Ⴁ ႠいあЁ!"));
+        assertEquals(List.of(Alphabet.ENGLISH_LOWERCASE, Alphabet.ENGLISH_UPPERCASE, Alphabet.RUSSIAN_LOWERCASE,
+            Alphabet.RUSSIAN_UPPERCASE, GREEK_LOWERCASE, GEORGIAN, HIRAGANA), registry.alphabets());
+        // lcm(26, 33, 24, 6, 5)
+        assertEquals(17160, registry.shiftPeriod());
+        assertSame(registry, cipher.registry());
+        assertSame(cipher, CaesarCipher.forShift(1 + 17160, registry));
+    }
+
+    @Test
+    @DisplayName("Byte translation handles letters from the fallback table")
+    void testUtf8FallbackLetters() {
+        CaesarCipher cipher = CaesarCipher.forShift(2, AlphabetRegistry.of(HIRAGANA, Alphabet.ENGLISH_LOWERCASE));
+        String text = "abc あいうえお xyz";
+        ByteBuffer source = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer destination = ByteBuffer.allocate(source.remaining());
+
+        assertEquals(source.capacity(), cipher.applyUtf8(source, destination, true));
+        assertEquals(cipher.apply(text), new String(destination.array(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Default registry drives the static cipher methods")
+    void testSetDefault() {
+        AlphabetRegistry original = AlphabetRegistry.getDefault();
+        try {
+            AlphabetRegistry.setDefault(original.with(GREEK_LOWERCASE));
+            // 289 is 3 modulo 26 and 1 modulo 24
+            assertEquals("Khoor β", CaesarCipher.encrypt("Hello α", 289));
+        } finally {
+            AlphabetRegistry.setDefault(original);
+        }
+        assertEquals("Khoor α", CaesarCipher.encrypt("Hello α", 3));
+    }
+
+    @Test
+    void testInvalidAlphabets() {
+        assertThrows(IllegalArgumentException.class, () -> new Alphabet("Empty", ""));
+        assertThrows(IllegalArgumentException.class, () -> new Alphabet("Repeated", "abca"));
+        assertThrows(IllegalArgumentException.class, () -> new Alphabet("Gothic", "𐌰"));
+        assertThrows(IllegalArgumentException.class, AlphabetRegistry::of);
+
+        IllegalArgumentException overlap = assertThrows(IllegalArgumentException.class,
+            () -> AlphabetRegistry.standard().with(new Alphabet("Ukrainian lowercase", "абвгґдеєжзиіїйклмнопрстуфхцчшщьюя")));
+        assertEquals("Letter 'а' is in both Russian lowercase and Ukrainian lowercase", overlap.getMessage());
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchEvaluatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResultsKeepInputOrder() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            input.append(i).append(" * 2 + 1\n");
+        }
+        StringWriter output = new StringWriter();
+
+        BatchEvaluator.Summary summary = BatchEvaluator.evaluate(
+            new BufferedReader(new StringReader(input.toString())), output, 4);
+
+        assertEquals(10_000, summary.lines());
+        assertEquals(0, summary.errors());
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(10_000, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(String.valueOf(i * 2 + 1), lines.get(i));
+        }
+    }
+
+    @Test
+    void testErrorsAreReportedPerLine() throws IOException {
+        String input = "2 + 3\n5 / 0\n\n1 + 2)\n7 / 2\n";
+        StringWriter output = new StringWriter();
+
+        BatchEvaluator.Summary summary = BatchEvaluator.evaluate(
+            new BufferedReader(new StringReader(input)), output, 2);
+
+        assertEquals(5, summary.lines());
+        assertEquals(2, summary.errors());
+        assertEquals(List.of("5", "Error: Division by zero", "",
+            "Error: Mismatched parentheses in expression: 1+2)", "3.5"), output.toString().lines().toList());
+    }
+
+    @Test
+    void testEvaluateFile() throws IOException {
+        Path input = tempDir.resolve("expressions.txt");
+        Path output = tempDir.resolve("results.txt");
+        Files.writeString(input, "2 + 3 * 4\n(10 + 5) / 3\n", StandardCharsets.UTF_8);
+
+        BatchEvaluator.evaluateFile(input, output);
+
+        assertEquals(List.of("14", "5"), Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMissingInputFile() {
+        assertThrows(IOException.class,
+            () -> BatchEvaluator.evaluateFile(tempDir.resolve("missing.txt"), tempDir.resolve("out.txt")));
+    }
+}
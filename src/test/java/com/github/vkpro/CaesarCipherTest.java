@@ -1,6 +1,13 @@
 package com.github.vkpro;
 
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CaesarCipherTest {
@@ -60,4 +67,86 @@ public class CaesarCipherTest {
         assertEquals("Abc", CaesarCipher.encrypt("Xyz", 3));
         assertEquals("аБв", CaesarCipher.encrypt("эЮя", 3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testYoHandling() {
+        assertEquals("ж", CaesarCipher.encrypt("ё", 1));
+        assertEquals("Ж", CaesarCipher.encrypt("Ё", 1));
+        assertEquals("ё", CaesarCipher.encrypt("е", 1));
+        assertEquals("Ё", CaesarCipher.decrypt("Ж", 1));
+    }
+
+    @Test
+    public void testEquivalentShifts() {
+        assertEquals(CaesarCipher.encrypt("Hello, Мир!", 3), CaesarCipher.encrypt("Hello, Мир!", 3 + 858));
+        assertEquals(CaesarCipher.encrypt("Hello, Мир!", -5), CaesarCipher.encrypt("Hello, Мир!", 853));
+        assertEquals("Hello, Мир!", CaesarCipher.encrypt("Hello, Мир!", 858));
+    }
+
+    @Test
+    public void testEngineIsCachedPerShift() {
+        assertSame(CaesarCipher.forShift(3), CaesarCipher.forShift(3 + 858));
+        assertSame(CaesarCipher.forShift(-1), CaesarCipher.forShift(857));
+        assertEquals("Khoor", CaesarCipher.forShift(3).apply("Hello"));
+        assertEquals("Hello", CaesarCipher.forShift(3).inverse().apply("Khoor"));
+    }
+
+    @Test
+    public void testStreamingMatchesStringApi() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * 8192) {
+            text.append("Hello, World! Привет, Мир! Ёлка 123\n");
+        }
+
+        StringWriter encrypted = new StringWriter();
+        CaesarCipher.encrypt(new StringReader(text.toString()), encrypted, 7);
+        assertEquals(CaesarCipher.encrypt(text.toString(), 7), encrypted.toString());
+
+        StringWriter decrypted = new StringWriter();
+        CaesarCipher.decrypt(new StringReader(encrypted.toString()), decrypted, 7);
+        assertEquals(text.toString(), decrypted.toString());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 200_000) {
+            text.append("Hello, World! Привет, Мир! Ёлка 123\n");
+        }
+        String expected = CaesarCipher.encrypt(text.toString(), 9);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, CaesarCipher.encryptParallel(text, 9, pool));
+            assertEquals(expected, CaesarCipher.encryptParallel(text.toString(), 9, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(text.toString(), CaesarCipher.decryptParallel(expected, 9));
+        assertEquals("Khoor", CaesarCipher.encryptParallel("Hello", 3));
+    }
+
+    @Test
+    public void testBulkTranslationMatchesCharacterTranslation() {
+        // Runs through the SIMD kernel when the vector build is present
+        String[] pieces = {"The quick brown fox jumps over the lazy dog. ", "Zz Aa 0123456789 {}[]`@\n",
+            "Съешь же ещё этих мягких французских булок! ", "\u00e9\u4e2d\uffff", "xyzXYZ"};
+        Random random = new Random(7);
+        for (int length : new int[] {1, 63, 64, 65, 1000, 100_000}) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < length) {
+                // Mostly ASCII with occasional non-ASCII runs
+                text.append(pieces[random.nextInt(10) < 8 ? random.nextInt(2) : 2 + random.nextInt(3)]);
+            }
+            text.setLength(length);
+            for (int shift : new int[] {0, 1, 13, 25, 26, 27, -3, 857}) {
+                CaesarCipher cipher = CaesarCipher.forShift(shift);
+                char[] expected = text.toString().toCharArray();
+                for (int i = 0; i < expected.length; i++) {
+                    expected[i] = cipher.apply(expected[i]);
+                }
+                assertEquals(new String(expected), cipher.apply(text.toString()), "shift " + shift + ", length " + length);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String sampleText() {
+        String[] words = {"Hello", "Привет", "ёжик", "😀", "World", "\r\n", "\n", " ", "Zz", "Ёё"};
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 5_000) {
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.toString();
+    }
+
+    private ChunkedFile write(String text, CaesarCipher cipher, int chunkSize) throws IOException {
+        Path input = tempDir.resolve("plain.txt");
+        Path output = tempDir.resolve("cipher.vkc");
+        Files.writeString(input, text, StandardCharsets.UTF_8);
+        ChunkedFile.write(input, output, cipher, chunkSize);
+        return ChunkedFile.open(output);
+    }
+
+    @Test
+    @DisplayName("Any character range decrypts to the same range of the plaintext")
+    void testReadRanges() throws IOException {
+        String text = sampleText();
+        try (ChunkedFile file = write(text, CaesarCipher.forShift(5), 37)) {
+            assertTrue(file.chunkCount() > 100);
+            assertEquals(text.length(), file.length());
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, file.plaintextSize());
+            assertEquals(text, file.read(0, file.length()));
+            Random random = new Random(11);
+            for (int i = 0; i < 500; i++) {
+                int from = random.nextInt(text.length() + 1);
+                int to = from + random.nextInt(text.length() - from + 1);
+                assertEquals(text.substring(from, to), file.read(from, to), from + ":" + to);
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> file.read(0, text.length() + 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Any line range decrypts to the same lines of the plaintext")
+    void testReadLines() throws IOException {
+        String text = sampleText();
+        List<String> expected = text.lines().toList();
+        try (ChunkedFile file = write(text, CaesarCipher.forShift(5), 37)) {
+            assertEquals(expected.size(), file.lineCount());
+            for (int from = 0; from <= expected.size(); from++) {
+                for (int to = from; to <= Math.min(expected.size(), from + 3); to++) {
+                    assertEquals(expected.subList(from, to), file.lines(from, to), from + ":" + to);
+                }
+            }
+            assertEquals(expected, file.lines(0, file.lineCount()));
+        }
+    }
+
+    @Test
+    @DisplayName("Line counts do not include a line after a final line feed")
+    void testLineCount() throws IOException {
+        try (ChunkedFile file = write("a\nb\n", CaesarCipher.forShift(1), 16)) {
+            assertEquals(2, file.lineCount());
+            assertEquals(List.of("a", "b"), file.lines(0, 2));
+        }
+        try (ChunkedFile file = write("a\n\nb", CaesarCipher.forShift(1), 16)) {
+            assertEquals(3, file.lineCount());
+            assertEquals(List.of("", "b"), file.lines(1, 3));
+        }
+    }
+
+    @Test
+    @DisplayName("The whole file decrypts in parallel and sequentially")
+    void testDecryptWholeFile() throws IOException {
+        String text = sampleText();
+        try (ChunkedFile file = write(text, CaesarCipher.forShift(-7), 64)) {
+            Path plain = tempDir.resolve("decrypted.txt");
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                file.decrypt(plain, pool);
+            } finally {
+                pool.shutdown();
+            }
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(plain));
+
+            StringWriter writer = new StringWriter();
+            file.decrypt(writer);
+            assertEquals(text, writer.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("The header restores the cipher, including custom alphabets")
+    void testCipherMetadata() throws IOException {
+        try (ChunkedFile file = write("abc", CaesarCipher.forShift(3), 16)) {
+            assertSame(CaesarCipher.forShift(3), file.cipher());
+        }
+        AlphabetRegistry registry = AlphabetRegistry.of(new Alphabet("mixed", "aЖ"));
+        CaesarCipher cipher = CaesarCipher.forShift(1, registry);
+        String text = "a-Ж ".repeat(20);
+        try (ChunkedFile file = write(text, cipher, 16)) {
+            assertEquals(1, file.cipher().shift());
+            assertEquals(registry.alphabets().toString(), file.cipher().registry().alphabets().toString());
+            assertEquals(text, file.read(0, file.length()));
+            Path plain = tempDir.resolve("decrypted.txt");
+            file.decrypt(plain);
+            assertEquals(text, Files.readString(plain, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @DisplayName("An empty file has no chunks")
+    void testEmptyFile() throws IOException {
+        try (ChunkedFile file = write("", CaesarCipher.forShift(3), 16)) {
+            assertEquals(0, file.chunkCount());
+            assertEquals(0, file.length());
+            assertEquals(0, file.lineCount());
+            assertEquals("", file.read(0, 0));
+            assertEquals(List.of(), file.lines(0, 0));
+        }
+    }
+
+    @Test
+    @DisplayName("Plain files are recognized and rejected")
+    void testNotChunked() throws IOException {
+        Path plain = tempDir.resolve("plain.txt");
+        Files.writeString(plain, "Just some text that is long enough for a footer", StandardCharsets.UTF_8);
+        assertFalse(ChunkedFile.isChunked(plain));
+        assertThrows(IOException.class, () -> ChunkedFile.open(plain));
+
+        Path output = tempDir.resolve("cipher.vkc");
+        ChunkedFile.write(plain, output, CaesarCipher.forShift(3), 16);
+        assertTrue(ChunkedFile.isChunked(output));
+        byte[] truncated = Files.readAllBytes(output);
+        Files.write(output, Arrays.copyOf(truncated, truncated.length - 1));
+        assertThrows(IOException.class, () -> ChunkedFile.open(output));
+    }
+
+    @Test
+    @DisplayName("Malformed input cannot be written")
+    void testMalformedInput() throws IOException {
+        Path input = tempDir.resolve("bad.txt");
+        Files.write(input, new byte[]{'a', (byte) 0xFF, 'b'});
+        assertThrows(IOException.class,
+            () -> ChunkedFile.write(input, tempDir.resolve("bad.vkc"), CaesarCipher.forShift(3), 16));
+    }
+}
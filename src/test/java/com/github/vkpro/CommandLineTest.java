@@ -0,0 +1,173 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandLineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private int run(String input, String... args) {
+        return CommandLine.run(args, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out,
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String output() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testEncryptTextArguments() {
+        assertEquals(CommandLine.EXIT_OK, run("", "encrypt", "--shift", "3", "Hello", "World"));
+        assertEquals("Khoor Zruog" + System.lineSeparator(), output());
+    }
+
+    @Test
+    void testDecryptFromStandardInput() {
+        assertEquals(CommandLine.EXIT_OK, run("Фхнжйч Снх", "decrypt", "--shift", "5"));
+        assertEquals("Привет Мир", output());
+    }
+
+    @Test
+    void testEncryptFiles() throws IOException {
+        Path input = tempDir.resolve("plain.txt");
+        Path output = tempDir.resolve("secret.txt");
+        Files.writeString(input, "Hello, Мир!", StandardCharsets.UTF_8);
+
+        assertEquals(CommandLine.EXIT_OK,
+            run("", "encrypt", "--shift", "3", "--in", input.toString(), "--out", output.toString()));
+        assertEquals("Khoor, Плу!", Files.readString(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEncryptDirectory() throws IOException {
+        Path input = tempDir.resolve("plain");
+        Files.createDirectories(input.resolve("nested"));
+        Files.writeString(input.resolve("nested/a.txt"), "Hello", StandardCharsets.UTF_8);
+        Path output = tempDir.resolve("secret");
+
+        assertEquals(CommandLine.EXIT_OK,
+            run("", "encrypt", "--shift", "3", "--in", input.toString(), "--out", output.toString()));
+        assertEquals("Khoor", Files.readString(output.resolve("nested/a.txt"), StandardCharsets.UTF_8));
+        assertTrue(output().contains("Processed 1 files (0 failed)"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "encrypt", "--shift", "3", "--in", input.toString()));
+    }
+
+    @Test
+    void testChunkedFile() throws IOException {
+        Path input = tempDir.resolve("plain.txt");
+        Files.writeString(input, "first line\nsecond line\nthird line\n", StandardCharsets.UTF_8);
+        Path chunked = tempDir.resolve("secret.vkc");
+
+        assertEquals(CommandLine.EXIT_OK, run("", "encrypt", "--shift", "3", "--in", input.toString(),
+            "--out", chunked.toString(), "--format", "chunked"));
+        assertEquals(CommandLine.EXIT_OK, run("", "decrypt", "--in", chunked.toString(), "--lines", "2:3"));
+        assertEquals("second line" + System.lineSeparator() + "third line" + System.lineSeparator(), output());
+        out.reset();
+        assertEquals(CommandLine.EXIT_OK, run("", "decrypt", "--in", chunked.toString(), "--chars", "6:10"));
+        assertEquals("line", output());
+
+        Path plain = tempDir.resolve("decrypted.txt");
+        assertEquals(CommandLine.EXIT_OK,
+            run("", "decrypt", "--shift", "3", "--in", chunked.toString(), "--out", plain.toString()));
+        assertEquals(Files.readString(input, StandardCharsets.UTF_8), Files.readString(plain, StandardCharsets.UTF_8));
+        assertEquals(CommandLine.EXIT_FAILURE, run("", "decrypt", "--shift", "4", "--in", chunked.toString()));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "decrypt", "--in", chunked.toString(), "--lines", "0:2"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "decrypt", "--shift", "3", "--in", input.toString(), "--lines", "1:2"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "encrypt", "--shift", "3", "--format", "zip", "--in", input.toString(),
+            "--out", chunked.toString()));
+    }
+
+    @Test
+    void testDetectShift() {
+        String ciphertext = CaesarCipher.encrypt("the quick brown fox jumps over the lazy dog and then the end", 5);
+
+        assertEquals(CommandLine.EXIT_OK, run(ciphertext, "detect"));
+        assertTrue(output().startsWith("Shift 5 "), output());
+        assertEquals(CommandLine.EXIT_FAILURE, run("", "detect", "123"));
+    }
+
+    @Test
+    void testEvaluateFileAsOneExpression() throws IOException {
+        Path input = tempDir.resolve("deep.txt");
+        Files.writeString(input, "(".repeat(50_000) + "1 +\n2" + ")".repeat(50_000), StandardCharsets.UTF_8);
+
+        assertEquals(CommandLine.EXIT_OK, run("", "eval", "--in", input.toString()));
+        assertEquals("3" + System.lineSeparator(), output());
+        assertEquals(CommandLine.EXIT_USAGE, run("", "eval", "--in", input.toString(), "1"));
+    }
+
+    @Test
+    void testClient() throws IOException {
+        try (Server server = Server.start(0)) {
+            String port = String.valueOf(((InetSocketAddress) server.address()).getPort());
+
+            assertEquals(CommandLine.EXIT_OK, run("", "client", "--port", port, "ENCRYPT", "3", "Hello"));
+            assertEquals("OK Khoor" + System.lineSeparator(), output());
+            out.reset();
+            assertEquals(CommandLine.EXIT_FAILURE, run("EVAL 1 + 1\nEVAL 1 / 0\n", "client", "--port", port));
+            assertTrue(output().startsWith("OK 2" + System.lineSeparator() + "ERROR "), output());
+        }
+        assertEquals(CommandLine.EXIT_USAGE, run("", "client", "--port", "70000"));
+    }
+
+    @Test
+    void testEvaluateArgument() {
+        assertEquals(CommandLine.EXIT_OK, run("", "eval", "2 + 3 * 4"));
+        assertEquals("14" + System.lineSeparator(), output());
+    }
+
+    @Test
+    void testNumericMode() {
+        assertEquals(CommandLine.EXIT_OK, run("", "eval", "0.1 + 0.2"));
+        assertEquals(CommandLine.EXIT_OK, run("", "eval", "--numeric", "double", "0.1 + 0.2"));
+        assertEquals(CommandLine.EXIT_OK, run("", "eval", "2^63"));
+        assertEquals(String.join(System.lineSeparator(), "0.3", "0.30000000000000004", "9223372036854775808", ""), output());
+        assertEquals(ExpressionEvaluator.NumericMode.EXACT, ExpressionEvaluator.numericMode());
+        assertEquals(CommandLine.EXIT_USAGE, run("", "eval", "--numeric", "float", "1"));
+    }
+
+    @Test
+    void testEvaluateStandardInput() {
+        assertEquals(CommandLine.EXIT_FAILURE, run("1 + 1\n5 / 0\n", "eval"));
+        assertEquals("2" + System.lineSeparator() + "Error: Division by zero" + System.lineSeparator(), output());
+    }
+
+    @Test
+    void testEvaluateFile() throws IOException {
+        Path input = tempDir.resolve("expressions.txt");
+        Path output = tempDir.resolve("results.txt");
+        Files.writeString(input, "7 / 2\n", StandardCharsets.UTF_8);
+
+        assertEquals(CommandLine.EXIT_OK, run("", "--eval-file", input.toString(), "--out", output.toString()));
+        assertEquals("3.5", Files.readString(output, StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    void testFailuresAndUsageErrors() {
+        assertEquals(CommandLine.EXIT_FAILURE, run("", "eval", "1 +"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "encrypt", "Hello"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "encrypt", "--shift", "x", "Hello"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "unknown"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "eval", "--bogus"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "follow", "--shift", "3", "--in", "app.log"));
+        assertEquals(CommandLine.EXIT_USAGE, run("", "follow", "--shift", "3", "--in", "a", "--out", "b", "--interval", "0"));
+        assertEquals(CommandLine.EXIT_FAILURE,
+            run("", "encrypt", "--shift", "1", "--in", tempDir.resolve("missing.txt").toString()));
+    }
+}
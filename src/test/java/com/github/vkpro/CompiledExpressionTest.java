@@ -0,0 +1,174 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledExpressionTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    @DisplayName("Test variables are listed in order of first use")
+    public void testVariables() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("price * (1 - discount) + tax + price");
+        assertEquals(List.of("price", "discount", "tax"), compiled.variables());
+        assertEquals(List.of(), ExpressionEvaluator.compile("2 + 3").variables());
+    }
+
+    @Test
+    @DisplayName("Test evaluation with variable values")
+    public void testEvaluateWithValues() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("price * (1 - discount) + tax");
+        assertEquals(95.0, compiled.evaluate(100, 0.1, 5), DELTA);
+        assertEquals(20.0, compiled.evaluate(20, 0, 0), DELTA);
+
+        assertEquals(-7.0, ExpressionEvaluator.compile("-x").evaluate(7), DELTA);
+        assertEquals(-4.0, ExpressionEvaluator.compile("2 * (-x_1 + 1)").evaluate(3), DELTA);
+    }
+
+    @Test
+    @DisplayName("Test missing or extra variable values")
+    public void testWrongValueCount() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("a + b");
+        assertThrows(IllegalArgumentException.class, compiled::evaluate);
+        assertThrows(IllegalArgumentException.class, () -> compiled.evaluate(1));
+        assertThrows(IllegalArgumentException.class, () -> compiled.evaluate(1, 2, 3));
+    }
+
+    @Test
+    @DisplayName("Test bulk evaluation over columns")
+    public void testBulkEvaluation() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("price * (1 - discount) + tax");
+        int rows = 5000;
+        double[] price = new double[rows];
+        double[] discount = new double[rows];
+        double[] tax = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            price[i] = i;
+            discount[i] = (i % 10) / 10.0;
+            tax[i] = i % 7;
+        }
+
+        double[] out = new double[rows];
+        compiled.evaluate(Map.of("price", price, "discount", discount, "tax", tax), out);
+
+        for (int i = 0; i < rows; i++) {
+            assertEquals(compiled.evaluate(price[i], discount[i], tax[i]), out[i], DELTA);
+        }
+    }
+
+    @Test
+    @DisplayName("Test parallel bulk evaluation matches sequential")
+    public void testParallelBulkEvaluation() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("x * x - 2 * x + 1");
+        int rows = 300_000;
+        double[] x = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i * 0.5;
+        }
+
+        double[] sequential = new double[rows];
+        double[] parallel = new double[rows];
+        compiled.evaluate(Map.of("x", x), sequential);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            compiled.evaluateParallel(Map.of("x", x), parallel, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(sequential, parallel);
+    }
+
+    @Test
+    @DisplayName("Test bulk evaluation of powers, remainders and functions")
+    public void testBulkEvaluationOfFunctions() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("sqrt(abs(x)) + x ^ 2 % 7 - max(x, 3, -x) + min(x, 1)");
+        int rows = 3000;
+        double[] x = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i * 0.25 - 300;
+        }
+
+        double[] out = new double[rows];
+        compiled.evaluate(Map.of("x", x), out);
+        for (int i = 0; i < rows; i++) {
+            assertEquals(compiled.evaluate(x[i]), out[i]);
+        }
+        assertThrows(ArithmeticException.class,
+            () -> ExpressionEvaluator.compile("a % b").evaluate(Map.of("a", new double[] {1, 2}, "b", new double[] {1, 0}), new double[2]));
+    }
+
+    @Test
+    @DisplayName("Test bulk evaluation errors")
+    public void testBulkEvaluationErrors() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("a / b");
+        double[] out = new double[3];
+
+        assertThrows(IllegalArgumentException.class,
+            () -> compiled.evaluate(Map.of("a", new double[3]), out));
+        assertThrows(IllegalArgumentException.class,
+            () -> compiled.evaluate(Map.of("a", new double[3], "b", new double[2]), out));
+        assertThrows(ArithmeticException.class,
+            () -> compiled.evaluate(Map.of("a", new double[] {1, 2, 3}, "b", new double[] {1, 0, 1}), out));
+    }
+
+    @Test
+    @DisplayName("Test hot expressions give the same results once compiled to bytecode")
+    public void testBytecodeTier() {
+        String[] expressions = {
+            "x + y * 2 - z / 4", "-(x - y) ^ 2 % 7", "sqrt(abs(x * y)) + min(x, y, z) - max(x, 3)",
+            "x / y / z", "x % y", "(x + 0.1) * (y - 0.2) * 100000 * 0.3", "-x * 0", "x ^ 0.5", "x"
+        };
+        double[][] rows = {{1, 2, 3}, {-4.5, 0.25, 8}, {0, -0.5, 1}, {Double.NaN, 1, 2}, {1e308, -1e308, 7}};
+        int threshold = ExpressionEvaluator.compileThreshold();
+        try {
+            for (String expression : expressions) {
+                CompiledExpression compiled = ExpressionEvaluator.compile(expression);
+                int variables = compiled.variables().size();
+                ExpressionEvaluator.setCompileThreshold(-1);
+                double[] expected = new double[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    expected[i] = ExpressionEvaluator.compile(expression).evaluate(Arrays.copyOf(rows[i], variables));
+                }
+                ExpressionEvaluator.setCompileThreshold(2);
+                for (int round = 0; round < 2; round++) {
+                    for (int i = 0; i < rows.length; i++) {
+                        assertEquals(expected[i], compiled.evaluate(Arrays.copyOf(rows[i], variables)), expression);
+                    }
+                }
+                // A lone variable load is left to the interpreter
+                assertEquals(!expression.equals("x"), compiled.isBytecodeCompiled(), expression);
+            }
+        } finally {
+            ExpressionEvaluator.setCompileThreshold(threshold);
+        }
+    }
+
+    @Test
+    @DisplayName("Test compiled bytecode reports division by zero and wrong value counts")
+    public void testBytecodeTierErrors() {
+        int threshold = ExpressionEvaluator.compileThreshold();
+        try {
+            ExpressionEvaluator.setCompileThreshold(0);
+            CompiledExpression division = ExpressionEvaluator.compile("a / (b - 1)");
+            assertEquals(2.0, division.evaluate(4, 3), DELTA);
+            assertTrue(division.isBytecodeCompiled());
+            assertThrows(ArithmeticException.class, () -> division.evaluate(4, 1));
+            assertThrows(IllegalArgumentException.class, () -> division.evaluate(4));
+
+            CompiledExpression remainder = ExpressionEvaluator.compile("a % b");
+            assertEquals(1.0, remainder.evaluate(7, 3), DELTA);
+            assertThrows(ArithmeticException.class, () -> remainder.evaluate(7, 0));
+        } finally {
+            ExpressionEvaluator.setCompileThreshold(threshold);
+        }
+    }
+}
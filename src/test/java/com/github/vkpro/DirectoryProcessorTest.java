@@ -0,0 +1,129 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Directory tree is mirrored with every file translated")
+    void testMirrorsTree() throws IOException {
+        Path input = tempDir.resolve("in");
+        Files.createDirectories(input.resolve("a/b"));
+        Files.createDirectories(input.resolve("empty"));
+        Files.writeString(input.resolve("top.txt"), "Hello, World!", StandardCharsets.UTF_8);
+        Files.writeString(input.resolve("a/ru.txt"), "Привет, Мир!", StandardCharsets.UTF_8);
+        Files.writeString(input.resolve("a/b/deep.txt"), "abc xyz", StandardCharsets.UTF_8);
+        Path output = tempDir.resolve("out");
+
+        DirectoryProcessor.Summary summary =
+            DirectoryProcessor.transformDirectory(input, output, CaesarCipher.forShift(3), 2);
+
+        assertEquals(3, summary.files().size());
+        assertEquals(0, summary.failures());
+        assertEquals(Files.size(input.resolve("top.txt")) + Files.size(input.resolve("a/ru.txt"))
+            + Files.size(input.resolve("a/b/deep.txt")), summary.bytes());
+        assertEquals("Khoor, Zruog!", Files.readString(output.resolve("top.txt"), StandardCharsets.UTF_8));
+        assertEquals(CaesarCipher.encrypt("Привет, Мир!", 3),
+            Files.readString(output.resolve("a/ru.txt"), StandardCharsets.UTF_8));
+        assertEquals("def abc", Files.readString(output.resolve("a/b/deep.txt"), StandardCharsets.UTF_8));
+        assertTrue(Files.isDirectory(output.resolve("empty")));
+    }
+
+    @Test
+    @DisplayName("A file that cannot be translated is reported without stopping the others")
+    void testReportsFailedFile() throws IOException {
+        Path input = tempDir.resolve("in");
+        Files.createDirectories(input);
+        Files.write(input.resolve("bad.txt"), new byte[]{'a', (byte) 0xFF, 'b'});
+        Files.writeString(input.resolve("good.txt"), "abc", StandardCharsets.UTF_8);
+        Path output = tempDir.resolve("out");
+
+        DirectoryProcessor.Summary summary =
+            DirectoryProcessor.transformDirectory(input, output, CaesarCipher.forShift(1));
+
+        assertEquals(1, summary.failures());
+        assertEquals("bcd", Files.readString(output.resolve("good.txt"), StandardCharsets.UTF_8));
+        DirectoryProcessor.FileResult failed = summary.files().stream()
+            .filter(result -> !result.succeeded())
+            .findFirst()
+            .orElseThrow();
+        assertEquals(Path.of("bad.txt"), failed.file());
+    }
+
+    @Test
+    @DisplayName("A runtime failure in one file is reported without stopping the others")
+    void testReportsRuntimeFailure() throws IOException {
+        Path input = tempDir.resolve("in");
+        Files.createDirectories(input);
+        Files.writeString(input.resolve("bad.txt"), "!abc", StandardCharsets.UTF_8);
+        Files.writeString(input.resolve("good.txt"), "abc", StandardCharsets.UTF_8);
+        Path output = tempDir.resolve("out");
+        CaesarCipher cipher = new CaesarCipher(AlphabetRegistry.standard(), 1) {
+            @Override
+            int applyUtf8(ByteBuffer source, ByteBuffer destination, boolean endOfInput) {
+                if (source.get(source.position()) == '!') {
+                    throw new IllegalStateException("Cipher failed");
+                }
+                return super.applyUtf8(source, destination, endOfInput);
+            }
+        };
+
+        DirectoryProcessor.Summary summary = DirectoryProcessor.transformDirectory(input, output, cipher);
+
+        assertEquals(2, summary.files().size());
+        assertEquals(1, summary.failures());
+        assertEquals("bcd", Files.readString(output.resolve("good.txt"), StandardCharsets.UTF_8));
+        DirectoryProcessor.FileResult failed = summary.files().stream()
+            .filter(result -> !result.succeeded())
+            .findFirst()
+            .orElseThrow();
+        assertEquals(Path.of("bad.txt"), failed.file());
+        assertTrue(failed.error().contains("Cipher failed"));
+    }
+
+    @Test
+    @DisplayName("Output directory inside the input directory is rejected")
+    void testOutputInsideInput() throws IOException {
+        Path input = tempDir.resolve("in");
+        Files.createDirectories(input);
+        Files.writeString(input.resolve("file.txt"), "abc", StandardCharsets.UTF_8);
+        CaesarCipher cipher = CaesarCipher.forShift(1);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> DirectoryProcessor.transformDirectory(input, input.resolve("out"), cipher));
+        assertThrows(IllegalArgumentException.class,
+            () -> DirectoryProcessor.transformDirectory(input, input.resolve("a/../b/out"), cipher));
+        assertFalse(Files.exists(input.resolve("out")));
+        // A sibling whose name merely starts with the input's name is outside it
+        DirectoryProcessor.transformDirectory(input, tempDir.resolve("in-out"), cipher);
+        assertEquals("bcd", Files.readString(tempDir.resolve("in-out/file.txt"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        Path file = tempDir.resolve("file.txt");
+        Files.writeString(file, "abc", StandardCharsets.UTF_8);
+        CaesarCipher cipher = CaesarCipher.forShift(1);
+
+        assertThrows(NotDirectoryException.class,
+            () -> DirectoryProcessor.transformDirectory(file, tempDir.resolve("out"), cipher));
+        assertThrows(IllegalArgumentException.class,
+            () -> DirectoryProcessor.transformDirectory(tempDir, tempDir, cipher));
+        assertThrows(IllegalArgumentException.class,
+            () -> DirectoryProcessor.transformDirectory(tempDir, tempDir.resolve("out"), cipher, 0));
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionCacheTest {
+
+    @Test
+    @DisplayName("Test repeated lookups hit the cache")
+    public void testHitsAndMisses() {
+        ExpressionCache cache = new ExpressionCache(100);
+
+        CompiledExpression first = cache.getOrCompile("2 + 3");
+        CompiledExpression second = cache.getOrCompile("2 + 3");
+
+        assertSame(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Test exact results are cached next to compiled expressions")
+    public void testExactResults() {
+        ExpressionCache cache = new ExpressionCache(100);
+
+        assertEquals(new BigDecimal("0.3"), cache.getOrEvaluateExact("0.1 + 0.2"));
+        assertSame(cache.getOrEvaluateExact("0.1 + 0.2"), cache.getOrEvaluateExact("0.1 + 0.2"));
+        cache.getOrCompile("0.1 + 0.2");
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertThrows(ArithmeticException.class, () -> cache.getOrEvaluateExact("1 / 0"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Test compiled and exact lookups share the capacity")
+    public void testMixedLookupsWithinCapacity() {
+        ExpressionCache cache = new ExpressionCache(8, 1);
+        for (int i = 0; i < 20; i++) {
+            cache.getOrCompile(i + " + 1");
+            cache.getOrEvaluateExact((i + 100) + " * 2");
+            assertTrue(cache.size() <= cache.capacity());
+        }
+
+        assertEquals(8, cache.size());
+        assertEquals(32, cache.evictions());
+        assertEquals(40, cache.misses());
+    }
+
+    @Test
+    @DisplayName("Test least recently used entries are evicted")
+    public void testLeastRecentlyUsedEviction() {
+        ExpressionCache cache = new ExpressionCache(2, 1);
+        CompiledExpression one = cache.getOrCompile("1");
+        cache.getOrCompile("2");
+        cache.getOrCompile("1"); // "2" is now the least recently used
+        cache.getOrCompile("3");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertSame(one, cache.getOrCompile("1"));
+        long misses = cache.misses();
+        cache.getOrCompile("2");
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    @DisplayName("Test invalid expressions are not cached")
+    public void testInvalidExpressionsNotCached() {
+        ExpressionCache cache = new ExpressionCache(10);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.getOrCompile("2 +"));
+        assertThrows(IllegalArgumentException.class, () -> cache.getOrCompile(null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Test zero capacity disables caching")
+    public void testZeroCapacity() {
+        ExpressionCache cache = new ExpressionCache(0);
+
+        assertNotSame(cache.getOrCompile("1 + 1"), cache.getOrCompile("1 + 1"));
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(-1));
+    }
+
+    @Test
+    @DisplayName("Test concurrent access stays within capacity")
+    public void testConcurrentAccess() throws Exception {
+        ExpressionCache cache = new ExpressionCache(64);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int n = i % 100;
+                        assertEquals(n + 1.0, cache.getOrCompile(n + " + 1").evaluate(), 0.0);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(80_000, cache.hits() + cache.misses());
+    }
+}
@@ -2,6 +2,9 @@ package com.github.vkpro;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+
+import java.math.BigDecimal;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ExpressionEvaluatorTest {
@@ -75,4 +78,228 @@ public class ExpressionEvaluatorTest {
         assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("2 + @"));
         assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("2 +"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test compiled expressions can be evaluated repeatedly")
+    public void testCompiledExpression() {
+        CompiledExpression compiled = ExpressionEvaluator.compile("2 * (3 + 4) - 1");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(13.0, compiled.evaluate(), DELTA);
+        }
+        assertEquals("2 * (3 + 4) - 1", compiled.source());
+    }
+
+    @Test
+    @DisplayName("Test compile reports structural errors and evaluate reports division by zero")
+    public void testCompiledExpressionErrors() {
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.compile("2 +"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.compile("(2 + 3"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.compile("2 + 3)"));
+
+        CompiledExpression compiled = ExpressionEvaluator.compile("10 / (5 - 5)");
+        assertThrows(ArithmeticException.class, compiled::evaluate);
+    }
+
+    @Test
+    @DisplayName("Test whitespace is ignored everywhere, even inside numbers")
+    public void testWhitespaceHandling() {
+        assertEquals(15.0, ExpressionEvaluator.evaluate("1 2 + 3"), DELTA);
+        assertEquals(6.0, ExpressionEvaluator.evaluate("\t2\n*\r3 "), DELTA);
+        assertEquals(-1.5, ExpressionEvaluator.evaluate("( - 1 . 5 )"), DELTA);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate("2 * ( 3 + 4"));
+        assertEquals("Mismatched parentheses in expression: 2*(3+4", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("Test power and remainder operators")
+    public void testPowerAndRemainder() {
+        assertEquals(1024.0, ExpressionEvaluator.evaluate("2 ^ 10"), DELTA);
+        assertEquals(512.0, ExpressionEvaluator.evaluate("2 ^ 3 ^ 2"), DELTA);
+        assertEquals(48.0, ExpressionEvaluator.evaluate("3 * 2 ^ 4"), DELTA);
+        assertEquals(1.0, ExpressionEvaluator.evaluate("10 % 3"), DELTA);
+        assertEquals(-1.0, ExpressionEvaluator.evaluate("-7 % 3 + 0"), DELTA);
+        assertEquals(4.0, ExpressionEvaluator.evaluate("2 + 7 % 5"), DELTA);
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluate("5 % (2 - 2)"));
+    }
+
+    @Test
+    @DisplayName("Test unary minus anywhere in an expression")
+    public void testUnaryMinus() {
+        assertEquals(8.0, ExpressionEvaluator.evaluate("5 - -3"), DELTA);
+        assertEquals(-6.0, ExpressionEvaluator.evaluate("2 * -3"), DELTA);
+        assertEquals(-4.0, ExpressionEvaluator.evaluate("-2 ^ 2"), DELTA);
+        assertEquals(0.5, ExpressionEvaluator.evaluate("2 ^ -1"), DELTA);
+        assertEquals(5.0, ExpressionEvaluator.evaluate("--5"), DELTA);
+        assertEquals(-5.0, ExpressionEvaluator.evaluate("-(2 + 3)"), DELTA);
+    }
+
+    @Test
+    @DisplayName("Test functions")
+    public void testFunctions() {
+        assertEquals(4.0, ExpressionEvaluator.evaluate("sqrt(16)"), DELTA);
+        assertEquals(3.5, ExpressionEvaluator.evaluate("abs(-3.5)"), DELTA);
+        assertEquals(-2.0, ExpressionEvaluator.evaluate("min(4, -2, 7)"), DELTA);
+        assertEquals(7.0, ExpressionEvaluator.evaluate("max(4, -2, 7)"), DELTA);
+        assertEquals(13.0, ExpressionEvaluator.evaluate("1 + max(sqrt(9), 2) * 4"), DELTA);
+        assertEquals(5.0, ExpressionEvaluator.compile("sqrt(x * x + y * y)").evaluate(3, 4), DELTA);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate("log(10)"));
+        assertEquals("Unknown function: log", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("sqrt(1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("max(1)"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("min(1, 2"));
+    }
+
+    @Test
+    @DisplayName("Test constant subexpressions are folded at compile time")
+    public void testConstantFolding() {
+        CompiledExpression literal = ExpressionEvaluator.compile("2 ^ 10 * sqrt(16) - max(1, 2, 3) % 2 + -(4 / 8)");
+        assertEquals(1, literal.instructionCount());
+        assertEquals(4094.5, literal.evaluate(), DELTA);
+
+        // x * 5
+        assertEquals(3, ExpressionEvaluator.compile("x * (2 + 3)").instructionCount());
+
+        // Division by a constant zero is left for evaluation to report
+        CompiledExpression division = ExpressionEvaluator.compile("1 + 10 / (5 - 5)");
+        assertThrows(ArithmeticException.class, division::evaluate);
+    }
+
+    @Test
+    @DisplayName("Test nesting beyond the compile limit is evaluated as a stream")
+    public void testNestingLimit() {
+        int depth = ExpressionEvaluator.MAX_NESTING / 2;
+        assertEquals(1.0, ExpressionEvaluator.compile("(".repeat(depth) + "1" + ")".repeat(depth)).evaluate(), DELTA);
+        String tooDeep = "(".repeat(ExpressionEvaluator.MAX_NESTING + 1) + "1" + ")".repeat(ExpressionEvaluator.MAX_NESTING + 1);
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.compile(tooDeep));
+        assertEquals(1.0, ExpressionEvaluator.evaluate(tooDeep), DELTA);
+        assertEquals(100_000.0, ExpressionEvaluator.evaluate("1" + " + 1".repeat(99_999)), DELTA);
+    }
+
+    @Test
+    @DisplayName("Test number literals parse exactly like Double.parseDouble")
+    public void testNumberLiterals() {
+        assertEquals(Double.parseDouble("0.1"), ExpressionEvaluator.evaluate("0.1"));
+        assertEquals(Double.parseDouble("123456789012345678901"), ExpressionEvaluator.evaluate("123456789012345678901"));
+        assertEquals(Double.parseDouble("-.5"), ExpressionEvaluator.evaluate("-.5"));
+        assertEquals(Double.parseDouble("7."), ExpressionEvaluator.evaluate("7."));
+        assertThrows(NumberFormatException.class, () -> ExpressionEvaluator.evaluate("1.2.3"));
+    }
+
+    @Test
+    @DisplayName("Test exact evaluation keeps integers beyond the long range and decimal fractions exact")
+    public void testExactEvaluation() {
+        assertEquals("0.3", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("0.1 + 0.2")));
+        assertEquals("3.3", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("1.10 + 2.20")));
+        assertEquals(new BigDecimal("9223372036854775808"), ExpressionEvaluator.evaluateExact("9223372036854775807 + 1"));
+        assertEquals(new BigDecimal("9223372036854775808"), ExpressionEvaluator.evaluateExact("-(-9223372036854775807 - 1)"));
+        assertEquals(new BigDecimal("18446744073709551616"), ExpressionEvaluator.evaluateExact("2^64"));
+        assertEquals(new BigDecimal("246913578024691357802469135780"),
+            ExpressionEvaluator.evaluateExact("123456789012345678901234567890 * 2"));
+        assertEquals(BigDecimal.valueOf(2), ExpressionEvaluator.evaluateExact("2^64 % 7"));
+        assertEquals(BigDecimal.valueOf(-1), ExpressionEvaluator.evaluateExact("-7 % 3"));
+        assertEquals(BigDecimal.valueOf(4), ExpressionEvaluator.evaluateExact("sqrt(16)"));
+        assertEquals("2.5", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("10 / 4")));
+        assertEquals("0.25", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("2^-2")));
+        assertEquals("0.3333333333333333333333333333333333", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("1/3")));
+        assertEquals("1.5", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("min(3, 1.5, 2)")));
+        assertEquals("1E+50", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("10^50")));
+    }
+
+    @Test
+    @DisplayName("Test exact evaluation agrees with double evaluation on small integers")
+    public void testExactMatchesDouble() {
+        String[] expressions = {"2 + 3 * (4 - 1)", "-2^2", "2^3^2", "17 % 5 * 3", "abs(-12) - max(1, 7, 3)", "100 / 5 / 2"};
+        for (String expression : expressions) {
+            assertEquals(ExpressionEvaluator.evaluate(expression), ExpressionEvaluator.evaluateExact(expression).doubleValue(),
+                expression);
+        }
+    }
+
+    @Test
+    @DisplayName("Test rounded values stay rounded and their errors do not show in results")
+    public void testExactRounding() {
+        assertEquals("1", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("1/3*3")));
+        assertEquals("1", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("1/3 + 1/3 + 1/3")));
+        assertEquals("10", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("10/3*3")));
+        assertEquals("2", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("sqrt(2)^2")));
+        assertEquals("1.5", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("sqrt(2.25)")));
+        assertEquals("2.651322908748817770971076134932811E+8083",
+            ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("123456789.123^999 + 1")));
+    }
+
+    @Test
+    @DisplayName("Test huge exact results are rounded instead of computed in full")
+    public void testExactSizeLimit() {
+        BigDecimal huge = ExpressionEvaluator.evaluateExact("1 + 3^34272100");
+        assertTrue(huge.precision() <= 34);
+        assertEquals("2.258799812513467150868355967290973E+16351947", ExpressionEvaluator.format(huge));
+        assertEquals("1", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("(0.1^1000)^1000 + 1")));
+        // Exact results within the limit keep every digit
+        assertEquals(302, ExpressionEvaluator.evaluateExact("2^1000").precision());
+    }
+
+    @Test
+    @DisplayName("Test non-integer powers are computed in the working precision")
+    public void testExactFractionalPower() {
+        assertEquals("2", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("2^0.5*2^0.5")));
+        assertEquals(ExpressionEvaluator.evaluateExact("sqrt(2)"), ExpressionEvaluator.evaluateExact("2^0.5"));
+        assertEquals("3", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("27^(1/3)")));
+        assertEquals("1000", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("100^1.5")));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("(-2)^0.5"));
+    }
+
+    @Test
+    @DisplayName("Test powers with exponents beyond the int range")
+    public void testExactHugeExponent() {
+        assertEquals("1.76161305168396335320749314979184E+646456993",
+            ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("2^2147483648")));
+        assertEquals("1.469074181577494753788496284923718E+528273777",
+            ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("1.5^3000000000")));
+        assertEquals("0", ExpressionEvaluator.format(ExpressionEvaluator.evaluateExact("0.5^(10^10)")));
+        ArithmeticException error = assertThrows(ArithmeticException.class,
+            () -> ExpressionEvaluator.evaluateExact("2^(10^10)"));
+        assertEquals("Result is too large to represent", error.getMessage());
+    }
+
+    @Test
+    @DisplayName("Test exact evaluation errors")
+    public void testExactEvaluationErrors() {
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("1 / 0"));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("2^70 % 0"));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("sqrt(-1)"));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("0^-1"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluateExact("x + 1"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluateExact("1 +"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluateExact(""));
+        assertThrows(NumberFormatException.class, () -> ExpressionEvaluator.evaluateExact("1.2.3"));
+    }
+
+    @Test
+    @DisplayName("Test results are formatted in the numeric mode")
+    public void testNumericMode() {
+        assertEquals(ExpressionEvaluator.NumericMode.EXACT, ExpressionEvaluator.numericMode());
+        assertEquals("0.3", ExpressionEvaluator.evaluateToString("0.1 + 0.2"));
+        String tooDeep = "(".repeat(ExpressionEvaluator.MAX_NESTING + 1) + "1" + ")".repeat(ExpressionEvaluator.MAX_NESTING + 1);
+        assertEquals("1", ExpressionEvaluator.evaluateToString(tooDeep));
+        ExpressionEvaluator.setNumericMode(ExpressionEvaluator.NumericMode.DOUBLE);
+        try {
+            assertEquals("0.30000000000000004", ExpressionEvaluator.evaluateToString("0.1 + 0.2"));
+        } finally {
+            ExpressionEvaluator.setNumericMode(ExpressionEvaluator.NumericMode.EXACT);
+        }
+    }
+
+    @Test
+    @DisplayName("Test whole numbers beyond the int range are formatted without a fraction")
+    public void testFormatLargeWholeNumbers() {
+        assertEquals("3000000000", ExpressionEvaluator.format(3e9));
+        assertEquals("-4294967296", ExpressionEvaluator.format(-4294967296.0));
+        assertEquals("2.5", ExpressionEvaluator.format(2.5));
+        assertEquals("1.0E20", ExpressionEvaluator.format(1e20));
+        assertEquals("Infinity", ExpressionEvaluator.format(Double.POSITIVE_INFINITY));
+        assertEquals("NaN", ExpressionEvaluator.format(Double.NaN));
+    }
+}
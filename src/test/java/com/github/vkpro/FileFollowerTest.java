@@ -0,0 +1,221 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileFollowerTest {
+
+    private static final CaesarCipher CIPHER = CaesarCipher.forShift(3);
+
+    @TempDir
+    Path tempDir;
+
+    private Path input;
+    private Path output;
+    private Path checkpoint;
+
+    private FileFollower open() throws IOException {
+        input = tempDir.resolve("app.log");
+        output = tempDir.resolve("app.log.enc");
+        checkpoint = tempDir.resolve("app.log.checkpoint");
+        return FileFollower.open(input, output, checkpoint, CIPHER);
+    }
+
+    private void append(String text) throws IOException {
+        append(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        Files.write(input, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private String output() throws IOException {
+        return Files.readString(output, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Only bytes appended since the previous pass are translated")
+    void testTranslatesAppendedBytes() throws IOException {
+        try (FileFollower follower = open()) {
+            assertEquals(0, follower.poll());
+            append("Hello\n");
+            assertEquals(6, follower.poll());
+            assertEquals(0, follower.poll());
+            append("Привет, World\n");
+            follower.poll();
+            assertEquals(CIPHER.apply("Hello\nПривет, World\n"), output());
+            assertEquals(Files.size(input), follower.offset());
+        }
+    }
+
+    @Test
+    @DisplayName("A multibyte sequence split between two passes is translated once complete")
+    void testSplitSequence() throws IOException {
+        byte[] bytes = "aЖb".getBytes(StandardCharsets.UTF_8);
+        try (FileFollower follower = open()) {
+            append(Arrays.copyOf(bytes, 2));
+            follower.poll();
+            assertEquals(CIPHER.apply("a"), output());
+        }
+        // The dangling byte is part of the checkpoint, so a new follower completes the sequence
+        try (FileFollower follower = open()) {
+            append(Arrays.copyOfRange(bytes, 2, bytes.length));
+            follower.poll();
+            assertEquals(CIPHER.apply("aЖb"), output());
+        }
+    }
+
+    @Test
+    @DisplayName("A restarted follower resumes from the checkpoint")
+    void testResumesFromCheckpoint() throws IOException {
+        try (FileFollower follower = open()) {
+            append("first line\n");
+            follower.poll();
+        }
+        append("second line\n");
+        try (FileFollower follower = open()) {
+            assertEquals("second line\n".length(), follower.poll());
+        }
+        assertEquals(CIPHER.apply("first line\nsecond line\n"), output());
+    }
+
+    @Test
+    @DisplayName("Output written after the last checkpoint is discarded on restart")
+    void testRepairsOutputAfterCrash() throws IOException {
+        try (FileFollower follower = open()) {
+            append("saved\n");
+            follower.poll();
+        }
+        // A pass that wrote output but died before saving its checkpoint
+        Files.writeString(output, "garbage", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        append("more\n");
+        try (FileFollower follower = open()) {
+            follower.poll();
+        }
+        assertEquals(CIPHER.apply("saved\nmore\n"), output());
+    }
+
+    @Test
+    @DisplayName("A file truncated in place is translated again from its beginning")
+    void testTruncation() throws IOException {
+        try (FileFollower follower = open()) {
+            append("a long first generation\n");
+            follower.poll();
+            Files.writeString(input, "new\n", StandardCharsets.UTF_8);
+            follower.poll();
+            assertEquals(CIPHER.apply("a long first generation\nnew\n"), output());
+            assertEquals(4, follower.offset());
+        }
+    }
+
+    @Test
+    @DisplayName("A rotated file is finished before the new file is translated")
+    void testRotation() throws IOException {
+        try (FileFollower follower = open()) {
+            append("one\n");
+            follower.poll();
+            append("two\n");
+            Files.move(input, tempDir.resolve("app.log.1"));
+            follower.poll();
+            assertEquals(CIPHER.apply("one\ntwo\n"), output());
+
+            append("three\n");
+            follower.poll();
+            assertEquals(CIPHER.apply("one\ntwo\nthree\n"), output());
+            assertEquals(6, follower.offset());
+        }
+    }
+
+    @Test
+    @DisplayName("A file rotated while no follower ran is translated from its beginning")
+    void testRotationWhileStopped() throws IOException {
+        try (FileFollower follower = open()) {
+            append("old generation\n");
+            follower.poll();
+        }
+        Files.move(input, tempDir.resolve("app.log.1"));
+        append("new\n");
+        try (FileFollower follower = open()) {
+            follower.poll();
+        }
+        assertEquals(CIPHER.apply("old generation\nnew\n"), output());
+    }
+
+    @Test
+    @DisplayName("Letters whose translation changes encoded length are still translated")
+    void testLengthChangingAlphabet() throws IOException {
+        AlphabetRegistry registry = AlphabetRegistry.of(new Alphabet("mixed", "aЖ"));
+        CaesarCipher cipher = CaesarCipher.forShift(1, registry);
+        Path in = tempDir.resolve("in.log");
+        Path out = tempDir.resolve("out.log");
+        Files.writeString(in, "a-Ж", StandardCharsets.UTF_8);
+        try (FileFollower follower = FileFollower.open(in, out, tempDir.resolve("cp"), cipher)) {
+            follower.poll();
+        }
+        assertEquals(cipher.apply("a-Ж"), Files.readString(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Malformed input fails the pass")
+    void testMalformedInput() throws IOException {
+        try (FileFollower follower = open()) {
+            append(new byte[]{'a', (byte) 0xFF, 'b'});
+            assertThrows(MalformedInputException.class, follower::poll);
+        }
+    }
+
+    @Test
+    @DisplayName("A pass that failed on malformed input fails again instead of skipping it")
+    void testMalformedInputIsNotSkipped() throws IOException {
+        try (FileFollower follower = open()) {
+            append("Hello\n");
+            follower.poll();
+            append(new byte[]{'a', (byte) 0xFF, 'b'});
+            assertThrows(MalformedInputException.class, follower::poll);
+            assertEquals(6, follower.offset());
+            append("World\n");
+            assertThrows(MalformedInputException.class, follower::poll);
+            assertEquals(6, follower.offset());
+            assertEquals(CIPHER.apply("Hello\n"), output());
+        }
+        try (FileFollower follower = open()) {
+            assertEquals(6, follower.offset());
+            assertThrows(MalformedInputException.class, follower::poll);
+        }
+    }
+
+    @Test
+    @DisplayName("Following picks up appends until the follower is closed")
+    void testFollow() throws Exception {
+        FileFollower follower = open();
+        Thread thread = new Thread(() -> {
+            try {
+                follower.follow(Duration.ofMillis(10));
+            } catch (IOException | InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        thread.start();
+        append("line\n");
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (follower.offset() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        follower.close();
+        thread.join(10_000);
+        assertFalse(thread.isAlive());
+        assertEquals(CIPHER.apply("line\n"), output());
+    }
+}
@@ -3,8 +3,11 @@ package com.github.vkpro;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,4 +65,163 @@ class FileHandlerTest {
         // Verify that the content is empty
         assertEquals("", content);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testEncryptFileMatchesInMemoryPipeline() throws IOException {
+        // Odd-length ASCII prefix pushes the two-byte Cyrillic letters across buffer boundaries
+        StringBuilder content = new StringBuilder("x");
+        while (content.length() < 50_000) {
+            content.append("Привет, Мир! Hello, World! ёЁ \uD83D\uDE00\n");
+        }
+        Path input = tempDir.resolve("input.txt");
+        Path encrypted = tempDir.resolve("encrypted.txt");
+        Path decrypted = tempDir.resolve("decrypted.txt");
+        Files.writeString(input, content, StandardCharsets.UTF_8);
+
+        FileHandler.encryptFile(input, encrypted, 5);
+        assertEquals(CaesarCipher.encrypt(content.toString(), 5), Files.readString(encrypted, StandardCharsets.UTF_8));
+
+        FileHandler.decryptFile(encrypted, decrypted, 5);
+        assertEquals(content.toString(), Files.readString(decrypted, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEncryptNonExistentFile() {
+        Path nonExistentFile = tempDir.resolve("nonexistent.txt");
+
+        assertThrows(IOException.class,
+            () -> FileHandler.encryptFile(nonExistentFile, tempDir.resolve("out.txt"), 3));
+    }
+
+    @Test
+    void testMappedTransformMatchesInMemoryPipeline() throws IOException {
+        String content = "Привет, Мир! Hello, World! ёЁ ß € 漢字 \uD83D\uDE00 123\n".repeat(200);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, content, StandardCharsets.UTF_8);
+        String expected = CaesarCipher.encrypt(content, 11);
+
+        // Small windows force multibyte sequences to straddle window boundaries
+        for (int regionSize : new int[] {4, 5, 7, 64, 1 << 20}) {
+            Path output = tempDir.resolve("mapped-" + regionSize + ".txt");
+            FileHandler.transformFileMapped(input, output, CaesarCipher.forShift(11), regionSize);
+            assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8), "region size " + regionSize);
+        }
+    }
+
+    @Test
+    void testMappedTransformRejectsMalformedInput() throws IOException {
+        Path input = tempDir.resolve("malformed.txt");
+        Files.write(input, new byte[] {'a', 'b', (byte) 0xD0, 'c'});
+
+        assertThrows(CharacterCodingException.class,
+            () -> FileHandler.encryptFile(input, tempDir.resolve("out.txt"), 3));
+    }
+
+    @Test
+    void testEncryptFileInPlace() throws IOException {
+        Path file = tempDir.resolve("inPlace.txt");
+        Files.writeString(file, "Hello, Мир!", StandardCharsets.UTF_8);
+
+        FileHandler.encryptFile(file, file, 3);
+
+        assertEquals("Khoor, Плу!", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMalformedInputKeepsExistingOutput() throws IOException {
+        Path input = tempDir.resolve("malformed.txt");
+        byte[] bytes = new byte[64];
+        java.util.Arrays.fill(bytes, (byte) 'a');
+        bytes[40] = (byte) 0xD0;
+        Files.write(input, bytes);
+        Path output = tempDir.resolve("out.txt");
+        Files.writeString(output, "previous output", StandardCharsets.UTF_8);
+        CaesarCipher cipher = CaesarCipher.forShift(3);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertThrows(CharacterCodingException.class, () -> FileHandler.transformFile(input, output, cipher));
+            assertThrows(CharacterCodingException.class, () -> FileHandler.transformFileMapped(input, output, cipher));
+            assertThrows(CharacterCodingException.class,
+                () -> FileHandler.transformFileParallel(input, output, cipher, pool, 1, 8));
+            assertThrows(CharacterCodingException.class,
+                () -> FileHandler.transformFileAsync(input, output, cipher, 3, 4));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals("previous output", Files.readString(output, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(tempDir.resolve("out.txt.tmp")));
+    }
+
+    @Test
+    void testParallelTransformMatchesInMemoryPipeline() throws IOException {
+        String content = "Привет, Мир! Hello, World! ёЁ € 漢字 \uD83D\uDE00 123\n".repeat(500);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, content, StandardCharsets.UTF_8);
+        String expected = CaesarCipher.encrypt(content, 4);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int regionSize : new int[] {4, 5, 1000, 4096}) {
+                Path output = tempDir.resolve("parallel-" + regionSize + ".txt");
+                FileHandler.transformFileParallel(input, output, CaesarCipher.forShift(4), pool, 1, regionSize);
+                assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8), "region size " + regionSize);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelTransformRejectsMalformedInput() throws IOException {
+        Path input = tempDir.resolve("malformed.txt");
+        byte[] bytes = new byte[64];
+        java.util.Arrays.fill(bytes, (byte) 0x80);
+        Files.write(input, bytes);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertThrows(CharacterCodingException.class, () ->
+                FileHandler.transformFileParallel(input, tempDir.resolve("out.txt"), CaesarCipher.forShift(3), pool, 1, 8));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testAsyncTransformMatchesInMemoryPipeline() throws IOException {
+        String content = "Привет, Мир! Hello, World! ёЁ ß € 漢字 \uD83D\uDE00 123\n".repeat(200);
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, content, StandardCharsets.UTF_8);
+        String expected = CaesarCipher.encrypt(content, 11);
+
+        // Small buffers force multibyte sequences to be carried over into the next buffer
+        for (int bufferCount : new int[] {2, 3, 5}) {
+            for (int bufferSize : new int[] {4, 5, 7, 64, 1 << 20}) {
+                Path output = tempDir.resolve("async-" + bufferCount + "-" + bufferSize + ".txt");
+                FileHandler.transformFileAsync(input, output, CaesarCipher.forShift(11), bufferCount, bufferSize);
+                assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8),
+                    bufferCount + " buffers of " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    void testAsyncTransformEdgeCases() throws IOException {
+        Path empty = tempDir.resolve("empty.txt");
+        Files.createFile(empty);
+        Path output = tempDir.resolve("out.txt");
+        Files.writeString(output, "stale content", StandardCharsets.UTF_8);
+
+        FileHandler.transformFileAsync(empty, output, CaesarCipher.forShift(3));
+        assertEquals("", Files.readString(output, StandardCharsets.UTF_8));
+
+        Path malformed = tempDir.resolve("malformed.txt");
+        Files.write(malformed, new byte[] {'a', 'b', (byte) 0xD0, 'c', 'd', 'e', 'f', 'g', 'h'});
+        assertThrows(CharacterCodingException.class,
+            () -> FileHandler.transformFileAsync(malformed, output, CaesarCipher.forShift(3), 3, 4));
+        assertThrows(IllegalArgumentException.class,
+            () -> FileHandler.transformFileAsync(empty, output, CaesarCipher.forShift(3), 1, 4));
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    void testCountsOperationsAndUnits() {
+        CaesarCipher.encrypt("Hello", 3);
+        CaesarCipher.decrypt("Привет, Мир", 3);
+        ExpressionEvaluator.evaluate("2 + 3");
+
+        assertEquals(2, Metrics.count(Metrics.Operation.CIPHER));
+        assertEquals(16, Metrics.units(Metrics.Operation.CIPHER));
+        assertEquals(1, Metrics.count(Metrics.Operation.EVALUATE));
+        assertEquals(5, Metrics.units(Metrics.Operation.EVALUATE));
+        assertTrue(Metrics.latencyPercentile(Metrics.Operation.CIPHER, 50) > 0);
+    }
+
+    @Test
+    @DisplayName("Evaluation errors are counted by type")
+    void testCountsErrorsByType() {
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluate("1 / 0"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("(1 + 2))"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("1 + $"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate(""));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("sqrt(-1)"));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluateExact("2 ^ (10 ^ 10)"));
+
+        assertEquals(6, Metrics.count(Metrics.Operation.EVALUATE));
+        assertEquals(1, Metrics.errors(Metrics.Operation.EVALUATE, Metrics.ErrorType.DIVISION_BY_ZERO));
+        assertEquals(2, Metrics.errors(Metrics.Operation.EVALUATE, Metrics.ErrorType.ARITHMETIC));
+        assertEquals(1, Metrics.errors(Metrics.Operation.EVALUATE, Metrics.ErrorType.MISMATCHED_PARENTHESES));
+        assertEquals(2, Metrics.errors(Metrics.Operation.EVALUATE, Metrics.ErrorType.INVALID_INPUT));
+        assertEquals(0, Metrics.units(Metrics.Operation.EVALUATE));
+    }
+
+    @Test
+    @DisplayName("A file transform counts once however many internal paths it takes")
+    void testFileTransformCountedOnce() throws IOException {
+        Path input = tempDir.resolve("input.txt");
+        Files.writeString(input, "Hello, Мир!", StandardCharsets.UTF_8);
+        Path malformed = tempDir.resolve("malformed.txt");
+        Files.write(malformed, new byte[] {'a', (byte) 0xFF});
+
+        FileHandler.encryptFile(input, tempDir.resolve("out.txt"), 3);
+        FileHandler.transformFileAsync(input, tempDir.resolve("async.txt"), CaesarCipher.forShift(3));
+        assertThrows(IOException.class, () -> FileHandler.encryptFile(malformed, tempDir.resolve("bad.txt"), 3));
+
+        assertEquals(3, Metrics.count(Metrics.Operation.FILE_TRANSFORM));
+        assertEquals(2 * Files.size(input), Metrics.units(Metrics.Operation.FILE_TRANSFORM));
+        assertEquals(1, Metrics.errors(Metrics.Operation.FILE_TRANSFORM, Metrics.ErrorType.IO));
+    }
+
+    @Test
+    void testDisabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        CaesarCipher.encrypt("Hello", 3);
+        ExpressionEvaluator.evaluate("1 + 1");
+
+        assertEquals(0, Metrics.count(Metrics.Operation.CIPHER));
+        assertEquals(0, Metrics.count(Metrics.Operation.EVALUATE));
+        assertEquals(0, Metrics.latencyPercentile(Metrics.Operation.CIPHER, 99));
+    }
+
+    @Test
+    void testHistogramBuckets() {
+        Metrics.LatencyHistogram histogram = new Metrics.LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(500_000, histogram.percentile(50), 500_000 / 16.0);
+        assertEquals(990_000, histogram.percentile(99), 990_000 / 16.0);
+        assertTrue(histogram.percentile(100) >= 1_000_000);
+        for (long value : new long[] {0, 1, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = Metrics.LatencyHistogram.bucketOf(value);
+            long highest = Metrics.LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= value && highest - value <= value / 16, "value " + value);
+        }
+    }
+
+    @Test
+    void testJson() throws IOException {
+        ExpressionEvaluator.evaluate("1 + 1");
+        Path file = tempDir.resolve("metrics.json");
+        Metrics.writeJson(file);
+
+        String json = Files.readString(file, StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"evaluate\": {\"count\": 1, \"chars\": 5, \"errors\": {\"division_by_zero\": 0"), json);
+        assertTrue(json.contains("\"p99_9\": "), json);
+        assertTrue(json.contains("\"file_transform\": {\"count\": 0, \"bytes\": 0"), json);
+    }
+}
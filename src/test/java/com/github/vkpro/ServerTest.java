@@ -0,0 +1,122 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testHandle() {
+        assertEquals("OK Khoor", Server.handle("ENCRYPT 3 Hello"));
+        assertEquals("OK Привет", Server.handle("decrypt 5 Фхнжйч"));
+        assertEquals("OK 14", Server.handle("EVAL 2 + 3 * 4"));
+        assertEquals("OK PONG", Server.handle("PING"));
+        assertEquals("OK ", Server.handle("ENCRYPT 3"));
+        assertTrue(Server.handle("EVAL 1 / 0").startsWith("ERROR "));
+        assertEquals("ERROR Shift must be a whole number: x", Server.handle("ENCRYPT x Hello"));
+        assertEquals("ERROR Unknown command: SHOUT", Server.handle("shout hello"));
+    }
+
+    @Test
+    void testRequestsOverTcp() throws IOException {
+        try (Server server = Server.start(0);
+             Client client = Client.connect(server.address())) {
+            assertEquals("Khoor, Плу!", client.encrypt(3, "Hello, Мир!"));
+            assertEquals("Hello, Мир!", client.decrypt(3, "Khoor, Плу!"));
+            assertEquals("2.5", client.evaluate("5 / 2"));
+            assertEquals("OK PONG", client.request("PING"));
+            assertThrows(IllegalArgumentException.class, () -> client.evaluate("(1 + 2"));
+            assertThrows(IllegalArgumentException.class, () -> client.encrypt(3, "two\nlines"));
+            // The connection stays usable after an error
+            assertEquals("3", client.evaluate("1 + 2"));
+        }
+    }
+
+    @Test
+    void testPipelinedRequests() throws IOException {
+        try (Server server = Server.start(0);
+             Socket socket = new Socket()) {
+            socket.connect(server.address());
+            OutputStream out = socket.getOutputStream();
+            out.write("ENCRYPT 1 abc\nEVAL 6 * 7\nPING\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("OK bcd", reader.readLine());
+            assertEquals("OK 42", reader.readLine());
+            assertEquals("OK PONG", reader.readLine());
+        }
+    }
+
+    @Test
+    void testConcurrentClients() throws Exception {
+        try (Server server = Server.start(0);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int c = 0; c < 20; c++) {
+                int shift = c;
+                results.add(executor.submit(() -> {
+                    try (Client client = Client.connect(server.address())) {
+                        for (int i = 0; i < 50; i++) {
+                            String text = "Message " + i;
+                            if (!text.equals(client.decrypt(shift, client.encrypt(shift, text)))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+    }
+
+    @Test
+    void testUnixDomainSocket() throws IOException {
+        Path socket = tempDir.resolve("cipher.sock");
+        try (Server server = Server.start(UnixDomainSocketAddress.of(socket));
+             Client client = Client.connect(server.address())) {
+            assertTrue(Files.exists(socket));
+            assertEquals("Khoor", client.encrypt(3, "Hello"));
+        }
+        assertFalse(Files.exists(socket));
+    }
+
+    @Test
+    void testCloseStopsServer() throws Exception {
+        Server server = Server.start(0);
+        Client client = Client.connect(server.address());
+        assertEquals("OK PONG", client.request("PING"));
+
+        server.close();
+        server.join();
+        assertThrows(IOException.class, () -> {
+            client.request("PING");
+            client.request("PING");
+        });
+        assertThrows(IOException.class, () -> Client.connect(server.address()));
+        client.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShiftDetectorTest {
+
+    private static final String ENGLISH = """
+        It was the best of times, it was the worst of times, it was the age of wisdom, it was the
+        age of foolishness, it was the epoch of belief, it was the epoch of incredulity, it was the
+        season of Light, it was the season of Darkness, it was the spring of hope, it was the winter
+        of despair, we had everything before us, we had nothing before us.
+        """;
+
+    private static final String RUSSIAN = """
+        Все счастливые семьи похожи друг на друга, каждая несчастливая семья несчастлива по-своему.
+        Всё смешалось в доме Облонских. Жена узнала, что муж был в связи с бывшею в их доме
+        француженкою-гувернанткой, и объявила мужу, что не может жить с ним в одном доме.
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDetectsEnglishShift() {
+        ShiftDetector.Estimate estimate = CaesarCipher.detectShift(CaesarCipher.encrypt(ENGLISH, 7));
+
+        assertEquals(7, estimate.shift());
+        assertTrue(estimate.confidence() > 0.5, estimate.toString());
+        assertEquals(ENGLISH, CaesarCipher.decrypt(CaesarCipher.encrypt(ENGLISH, 7), estimate.shift()));
+    }
+
+    @Test
+    void testDetectsRussianShift() {
+        String ciphertext = CaesarCipher.encrypt(RUSSIAN, 40);
+        ShiftDetector.Estimate estimate = CaesarCipher.detectShift(ciphertext);
+
+        assertEquals(7, estimate.shift());
+        assertEquals(RUSSIAN, CaesarCipher.decrypt(ciphertext, estimate.shift()));
+    }
+
+    @Test
+    @DisplayName("Shifts of both languages combine into the one shift that fits both")
+    void testDetectsMixedShift() {
+        String text = ENGLISH + RUSSIAN;
+        for (int shift : new int[]{1, 100, 545, 857}) {
+            assertEquals(shift, CaesarCipher.detectShift(CaesarCipher.encrypt(text, shift)).shift());
+        }
+    }
+
+    @Test
+    void testNoLetters() throws IOException {
+        ShiftDetector.Estimate estimate = CaesarCipher.detectShift(new StringReader("12345 !?"));
+
+        assertEquals(new ShiftDetector.Estimate(0, 0, 0), estimate);
+        assertEquals(estimate, CaesarCipher.detectShift(""));
+    }
+
+    @Test
+    void testReaderMatchesText() throws IOException {
+        String ciphertext = CaesarCipher.encrypt(ENGLISH.repeat(50) + RUSSIAN.repeat(50), 321);
+
+        assertEquals(CaesarCipher.detectShift(ciphertext), CaesarCipher.detectShift(new StringReader(ciphertext)));
+    }
+
+    @Test
+    @DisplayName("Sampling a large file reads only part of it and still finds the shift")
+    void testSampledFile() throws IOException {
+        Path file = tempDir.resolve("secret.txt");
+        Files.writeString(file, CaesarCipher.encrypt((ENGLISH + RUSSIAN).repeat(2000), 123), StandardCharsets.UTF_8);
+
+        ShiftDetector.Estimate full = CaesarCipher.detectShift(file, Long.MAX_VALUE);
+        ShiftDetector.Estimate sampled = CaesarCipher.detectShift(file, 64 * 1024);
+
+        assertEquals(123, full.shift());
+        assertEquals(123, sampled.shift());
+        assertTrue(sampled.letters() < full.letters() / 10, sampled + " vs " + full);
+        assertThrows(IllegalArgumentException.class, () -> CaesarCipher.detectShift(file, 0));
+    }
+}
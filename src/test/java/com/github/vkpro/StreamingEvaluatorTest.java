@@ -0,0 +1,153 @@
+package com.github.vkpro;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingEvaluatorTest {
+
+    /**
+     * Produces {@code prefix} repeated, then {@code middle}, then {@code suffix} repeated,
+     * without ever holding the whole text.
+     */
+    private static Reader repeated(String prefix, String middle, String suffix, long repetitions) {
+        return new Reader() {
+            private long position;
+            private final long length = (prefix.length() + suffix.length()) * repetitions + middle.length();
+
+            @Override
+            public int read(char[] buffer, int offset, int count) {
+                if (position == length) {
+                    return -1;
+                }
+                int read = 0;
+                while (read < count && position < length) {
+                    long suffixStart = prefix.length() * repetitions + middle.length();
+                    char c;
+                    if (position < prefix.length() * repetitions) {
+                        c = prefix.charAt((int) (position % prefix.length()));
+                    } else if (position < suffixStart) {
+                        c = middle.charAt((int) (position - prefix.length() * repetitions));
+                    } else {
+                        c = suffix.charAt((int) ((position - suffixStart) % suffix.length()));
+                    }
+                    buffer[offset + read++] = c;
+                    position++;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("Test streaming gives exactly the results of compiled evaluation")
+    void testMatchesCompiledEvaluation() throws IOException {
+        String[] expressions = {
+            "2 + 3 * (4 - 1)", "1 2 + 3", "( - 1 . 5 )", "-2 ^ 2", "2 ^ 3 ^ 2", "2 ^ -1", "5 - -3",
+            "10 % 3 * 2", "7 / 3 - 1 / 3", "sqrt(2) * abs(-3.25)", "min(4, -2, 7) + max(1, 2 + 3, 4)",
+            "-(2 + 3) * --4", "0.1 + 0.2", "123456789012345678901 / 7", "max(min(1, 2), sqrt(16) ^ 0.5)"
+        };
+        for (String expression : expressions) {
+            double compiled = ExpressionEvaluator.compile(expression).evaluate();
+            assertEquals(compiled, ExpressionEvaluator.evaluate(expression, ExpressionLimits.DEFAULT), expression);
+            assertEquals(compiled, ExpressionEvaluator.evaluate(new StringReader(expression), ExpressionLimits.DEFAULT),
+                expression);
+        }
+    }
+
+    @Test
+    @DisplayName("Test very deep nesting is read without holding the expression")
+    void testDeepNesting() throws IOException {
+        assertEquals(200_001.0, ExpressionEvaluator.evaluate(repeated("(1 + ", "1", ")", 200_000), ExpressionLimits.DEFAULT));
+        assertEquals(-1.0, ExpressionEvaluator.evaluate(repeated("-(", "1", ")", 300_001), ExpressionLimits.DEFAULT));
+        assertEquals(2.0, ExpressionEvaluator.evaluate("(".repeat(100_000) + "2" + ")".repeat(100_000)));
+    }
+
+    @Test
+    @DisplayName("Test long flat expressions use constant memory")
+    void testLongExpression() throws IOException {
+        assertEquals(1_000_001.0, ExpressionEvaluator.evaluate(repeated("1 + ", "1", "", 1_000_000), ExpressionLimits.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("Test limits fail fast")
+    void testLimits() {
+        ExpressionLimits limits = new ExpressionLimits(1000, 10, 5);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate(repeated("1 + ", "1", "", 1_000_000_000L), limits));
+        assertEquals("Expression has more than 5 operands", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate(repeated("(", "1", ")", 1_000_000_000L), limits));
+        assertEquals("Expression is nested more than 10 levels deep", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate(repeated("", "1", "1", 1_000_000_000L), limits));
+        assertEquals("Expression is longer than 1000 characters", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("1".repeat(1001), limits));
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionLimits(0, 10, 10));
+    }
+
+    @Test
+    @DisplayName("Test a huge number literal fails instead of growing memory")
+    void testLiteralLength() throws IOException {
+        ExpressionLimits limits = new ExpressionLimits(Long.MAX_VALUE, 10, 5, 20);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate(repeated("", "1", "1", 1_000_000_000L), limits));
+        assertEquals("Number literal is longer than 20 characters", e.getMessage());
+        assertEquals(123456789123456789.5, ExpressionEvaluator.evaluate("123456789 123456789.5", limits));
+        assertEquals(ExpressionLimits.DEFAULT_MAX_LITERAL_LENGTH, ExpressionLimits.DEFAULT.maxLiteralLength());
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionLimits(10, 10, 10, 0));
+    }
+
+    @Test
+    @DisplayName("Test errors")
+    void testErrors() {
+        ExpressionLimits limits = ExpressionLimits.DEFAULT;
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluate("1 + 2 / (3 - 3)", limits));
+        assertThrows(ArithmeticException.class, () -> ExpressionEvaluator.evaluate("1 % 0", limits));
+        assertEquals("Expression cannot be empty",
+            assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate(" \n ", limits)).getMessage());
+        assertEquals("Incomplete expression",
+            assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("1 +", limits)).getMessage());
+        assertTrue(assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate("(1 + 2", limits)).getMessage().startsWith("Mismatched parentheses"));
+        assertTrue(assertThrows(IllegalArgumentException.class,
+            () -> ExpressionEvaluator.evaluate("1 + 2)", limits)).getMessage().startsWith("Mismatched parentheses"));
+        assertEquals("Missing value for variable: x",
+            assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("2 * x", limits)).getMessage());
+        assertEquals("Unknown function: log",
+            assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("log(2)", limits)).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("max(2)", limits));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("sqrt(2, 3)", limits));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("1, 2", limits));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("2 3 x", limits));
+        assertEquals("Invalid character in expression: @",
+            assertThrows(IllegalArgumentException.class, () -> ExpressionEvaluator.evaluate("2 + @", limits)).getMessage());
+        assertThrows(NumberFormatException.class, () -> ExpressionEvaluator.evaluate("1.2.3", limits));
+    }
+
+    @Test
+    @DisplayName("Test read errors are reported as IOException")
+    void testReadError() {
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int count) throws IOException {
+                throw new IOException("Disk on fire");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals("Disk on fire",
+            assertThrows(IOException.class, () -> ExpressionEvaluator.evaluate(failing, ExpressionLimits.DEFAULT)).getMessage());
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.vkpro;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link AsciiKernel} built on the incubating Vector API. Characters are loaded as 16-bit
+ * lanes of the widest vector the hardware supports, 8 to 32 characters per operation.
+ * Letters are found with lane-wise range compares, shifted with a masked add and brought
+ * back into their alphabet with a masked subtract.
+ * <p>
+ * This class is loaded reflectively by {@link CaesarCipher}; a build or runtime without
+ * the {@code jdk.incubator.vector} module falls back to the scalar loop.
+ */
+final class VectorAsciiKernel implements AsciiKernel {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final short NON_ASCII_BITS = (short) 0xFF80;
+    private static final short ALPHABET_SIZE = 26;
+
+    @Override
+    public int blockSize() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int translate(char[] chars, int from, int to, int lowerShift, int upperShift) {
+        short lower = (short) lowerShift;
+        short upper = (short) upperShift;
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, chars, i);
+            if (v.lanewise(VectorOperators.AND, NON_ASCII_BITS).compare(VectorOperators.NE, (short) 0).anyTrue()) {
+                break;
+            }
+            VectorMask<Short> isLower = v.compare(VectorOperators.GE, (short) 'a').and(v.compare(VectorOperators.LE, (short) 'z'));
+            VectorMask<Short> isUpper = v.compare(VectorOperators.GE, (short) 'A').and(v.compare(VectorOperators.LE, (short) 'Z'));
+            ShortVector shifted = v.add(lower, isLower).add(upper, isUpper);
+            shifted = shifted.sub(ALPHABET_SIZE, isLower.and(shifted.compare(VectorOperators.GT, (short) 'z')));
+            shifted = shifted.sub(ALPHABET_SIZE, isUpper.and(shifted.compare(VectorOperators.GT, (short) 'Z')));
+            shifted.intoCharArray(chars, i);
+        }
+        return i;
+    }
+}